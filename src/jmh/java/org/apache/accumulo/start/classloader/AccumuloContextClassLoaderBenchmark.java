@@ -0,0 +1,219 @@
+package org.apache.accumulo.start.classloader;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.vfs2.FileChangeEvent;
+import org.apache.commons.vfs2.FileObject;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Class and resource lookups through {@link AccumuloContextClassLoader} for a context whose
+ * classpath is a jar on a local, in memory, or HDFS file system.
+ *
+ * Run with: mvn -Pjmh verify -Djmh.args="AccumuloContextClassLoaderBenchmark"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccumuloContextClassLoaderBenchmark {
+
+  private static final String CONTEXT = "benchmark";
+
+  @State(Scope.Benchmark)
+  public static class ContextState {
+
+    @Param({"file", "ram", "hdfs"})
+    String classpath;
+
+    /**
+     * Milliseconds between classpath change events sent to the context in the reload benchmark
+     */
+    @Param({"10"})
+    long reloadInterval;
+
+    BenchmarkClasspath fixture;
+    AccumuloContextClassLoader loader;
+    private Thread reloader = null;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+      fixture = new BenchmarkClasspath(classpath);
+      FileObject[] files = new FileObject[] {fixture.getJar()};
+      loader = new AccumuloContextClassLoader(files, fixture.getFileSystemManager(), ClassLoader.getSystemClassLoader());
+      loader.addContext(CONTEXT, files);
+      loader.getClassLoader(CONTEXT).setReloadQuietPeriod(0);
+      loader.loadClass(CONTEXT, BenchmarkClasspath.CLASS_NAME);
+    }
+
+    /**
+     * Replace the delegate of the context every reload interval while the benchmark runs, as if
+     * the jar kept changing
+     */
+    void startReloading() {
+      final AccumuloReloadingVFSClassLoader cl = loader.getClassLoader(CONTEXT);
+      final FileChangeEvent event = new FileChangeEvent(fixture.getJar());
+      reloader = new Thread("benchmark reloader") {
+        @Override
+        public void run() {
+          try {
+            while (!isInterrupted()) {
+              cl.fileChanged(event);
+              Thread.sleep(reloadInterval);
+            }
+          } catch (InterruptedException e) {
+            // done
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      reloader.setDaemon(true);
+      reloader.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+      if (null != reloader) {
+        reloader.interrupt();
+        reloader.join();
+      }
+      loader.close();
+      fixture.close();
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class ReloadingState extends ContextState {
+
+    @Setup(Level.Trial)
+    public void reload() {
+      startReloading();
+    }
+  }
+
+  /**
+   * Reports the reloads of the context during an iteration as a secondary result. Only the first
+   * thread counts them, so the sum over all threads is the number of reloads.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class ReloadCounters {
+
+    public long reloads;
+
+    private AccumuloReloadingVFSClassLoader cl;
+    private boolean counting;
+    private long start;
+
+    @Setup(Level.Iteration)
+    public void reset(ReloadingState state, ThreadParams thread) {
+      cl = state.loader.getClassLoader(CONTEXT);
+      counting = thread.getThreadIndex() == 0;
+      start = cl.getReloadCount();
+      reloads = 0;
+    }
+
+    /**
+     * Record the reloads since the iteration started
+     */
+    void update() {
+      if (counting)
+        reloads = cl.getReloadCount() - start;
+    }
+  }
+
+  /**
+   * A context classloader that has not defined the benchmark class yet
+   */
+  @State(Scope.Thread)
+  public static class FreshLoader {
+
+    AccumuloReloadingVFSClassLoader cl;
+
+    @Setup(Level.Invocation)
+    public void setup(ContextState state) throws Exception {
+      cl = new AccumuloReloadingVFSClassLoader(new FileObject[] {state.fixture.getJar()}, state.fixture.getFileSystemManager(),
+          ClassLoader.getSystemClassLoader());
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+      cl.close();
+    }
+  }
+
+  @Benchmark
+  public Class<?> loadClassCached(ContextState state) throws Exception {
+    return state.loader.loadClass(CONTEXT, BenchmarkClasspath.CLASS_NAME);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public Class<?> loadClassUncached(FreshLoader fresh) throws Exception {
+    return fresh.cl.loadClass(BenchmarkClasspath.CLASS_NAME);
+  }
+
+  @Benchmark
+  public Object loadClassMissing(ContextState state) {
+    try {
+      return state.loader.loadClass(CONTEXT, BenchmarkClasspath.MISSING_CLASS_NAME);
+    } catch (ClassNotFoundException e) {
+      return e;
+    }
+  }
+
+  @Benchmark
+  public URL getResource(ContextState state) {
+    return state.loader.getResource(CONTEXT, BenchmarkClasspath.RESOURCE_NAME);
+  }
+
+  @Benchmark
+  public int getResourceAsStream(ContextState state) throws Exception {
+    InputStream in = state.loader.getResourceAsStream(CONTEXT, BenchmarkClasspath.RESOURCE_NAME);
+    byte[] buffer = new byte[4096];
+    int total = 0;
+    try {
+      int n;
+      while ((n = in.read(buffer)) != -1)
+        total += n;
+    } finally {
+      in.close();
+    }
+    return total;
+  }
+
+  @Benchmark
+  @Threads(8)
+  public Class<?> loadClassContended(ContextState state) throws Exception {
+    return state.loader.loadClass(CONTEXT, BenchmarkClasspath.CLASS_NAME);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Class<?> loadClassDuringReload(ReloadingState state, ReloadCounters counters) throws Exception {
+    Class<?> clazz = state.loader.loadClass(CONTEXT, BenchmarkClasspath.CLASS_NAME);
+    counters.update();
+    return clazz;
+  }
+
+}
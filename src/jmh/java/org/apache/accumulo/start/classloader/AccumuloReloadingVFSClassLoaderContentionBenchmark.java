@@ -0,0 +1,94 @@
+package org.apache.accumulo.start.classloader;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.vfs2.FileObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures loadClass throughput of AccumuloReloadingVFSClassLoader as the number of concurrent
+ * callers grows from 1 to 64 threads. Each thread count is run twice, once against the lock-free
+ * lookup path and once with every lookup wrapped in a fair ReentrantLock, which is how lookups were
+ * serialized before. The nested classes run the same benchmarks with 1, 2, 4, 8, 16, 32 and 64
+ * threads.
+ *
+ * Run with: mvn -Pjmh verify -Djmh.args="AccumuloReloadingVFSClassLoaderContentionBenchmark", add -p classpath=ram or hdfs for other classpaths
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public abstract class AccumuloReloadingVFSClassLoaderContentionBenchmark {
+
+  @Threads(1)
+  public static class Threads1 extends AccumuloReloadingVFSClassLoaderContentionBenchmark {}
+
+  @Threads(2)
+  public static class Threads2 extends AccumuloReloadingVFSClassLoaderContentionBenchmark {}
+
+  @Threads(4)
+  public static class Threads4 extends AccumuloReloadingVFSClassLoaderContentionBenchmark {}
+
+  @Threads(8)
+  public static class Threads8 extends AccumuloReloadingVFSClassLoaderContentionBenchmark {}
+
+  @Threads(16)
+  public static class Threads16 extends AccumuloReloadingVFSClassLoaderContentionBenchmark {}
+
+  @Threads(32)
+  public static class Threads32 extends AccumuloReloadingVFSClassLoaderContentionBenchmark {}
+
+  @Threads(64)
+  public static class Threads64 extends AccumuloReloadingVFSClassLoaderContentionBenchmark {}
+
+  @Param({"file"})
+  String classpath;
+
+  private BenchmarkClasspath fixture;
+  private AccumuloReloadingVFSClassLoader cl;
+  private final ReentrantLock fairLock = new ReentrantLock(true);
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    fixture = new BenchmarkClasspath(classpath);
+    cl = new AccumuloReloadingVFSClassLoader(new FileObject[] {fixture.getJar()}, fixture.getFileSystemManager(), ClassLoader.getSystemClassLoader());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    cl.close();
+    fixture.close();
+  }
+
+  @Benchmark
+  public Class<?> lockFree() throws Exception {
+    return cl.loadClass(BenchmarkClasspath.CLASS_NAME);
+  }
+
+  @Benchmark
+  public Class<?> fairLock() throws Exception {
+    fairLock.lock();
+    try {
+      return cl.loadClass(BenchmarkClasspath.CLASS_NAME);
+    } finally {
+      fairLock.unlock();
+    }
+  }
+
+}
@@ -0,0 +1,95 @@
+package org.apache.accumulo.start.classloader;
+
+import java.net.URL;
+
+import org.apache.commons.vfs2.CacheStrategy;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.Selectors;
+import org.apache.commons.vfs2.cache.SoftRefFilesCache;
+import org.apache.commons.vfs2.impl.DefaultFileReplicator;
+import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
+import org.apache.commons.vfs2.impl.FileContentInfoFilenameFactory;
+import org.apache.commons.vfs2.provider.ReadOnlyHdfsFileProvider;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * The file system manager and test jar shared by the class loading benchmarks. The jar is read
+ * from the test resources for file:, copied into memory for ram:, and copied into a MiniDFSCluster
+ * started in the benchmark JVM for hdfs:.
+ */
+class BenchmarkClasspath {
+
+  static final String CLASS_NAME = "test.HelloWorld";
+  static final String RESOURCE_NAME = "test/HelloWorld.class";
+  static final String MISSING_CLASS_NAME = "test.Missing";
+
+  private static final String HDFS_URI = "hdfs://localhost:8020";
+  private static final Path HDFS_DIR = new Path("/benchmark");
+
+  private final DefaultFileSystemManager vfs;
+  private final FileObject jar;
+  private MiniDFSCluster cluster = null;
+
+  /**
+   * @param scheme
+   *          file, ram or hdfs
+   */
+  BenchmarkClasspath(String scheme) throws Exception {
+    Logger.getRootLogger().setLevel(Level.ERROR);
+
+    vfs = new DefaultFileSystemManager();
+    vfs.addProvider("zip", new org.apache.commons.vfs2.provider.zip.ZipFileProvider());
+    vfs.addProvider("ram", new org.apache.commons.vfs2.provider.ram.RamFileProvider());
+    vfs.addProvider("file", new org.apache.commons.vfs2.provider.local.DefaultLocalFileProvider());
+    vfs.addProvider("jar", new org.apache.commons.vfs2.provider.jar.JarFileProvider());
+    vfs.addProvider("hdfs", new ReadOnlyHdfsFileProvider());
+    vfs.addExtensionMap("jar", "jar");
+    vfs.setFileContentInfoFactory(new FileContentInfoFilenameFactory());
+    vfs.setFilesCache(new SoftRefFilesCache());
+    vfs.setReplicator(new DefaultFileReplicator());
+    vfs.setCacheStrategy(CacheStrategy.ON_RESOLVE);
+    vfs.init();
+
+    URL jarPath = BenchmarkClasspath.class.getResource("/HelloWorld.jar");
+    if ("file".equals(scheme)) {
+      jar = vfs.resolveFile(jarPath.toString());
+    } else if ("ram".equals(scheme)) {
+      jar = vfs.resolveFile("ram:///benchmark/HelloWorld.jar");
+      jar.copyFrom(vfs.resolveFile(jarPath.toString()), Selectors.SELECT_SELF);
+    } else if ("hdfs".equals(scheme)) {
+      Configuration conf = new Configuration();
+      conf.set(FileSystem.FS_DEFAULT_NAME_KEY, HDFS_URI);
+      conf.set("hadoop.security.token.service.use_ip", "true");
+      conf.set("dfs.datanode.data.dir.perm", "775");
+      conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 1024 * 100); //100K blocksize
+      cluster = new MiniDFSCluster(8020, conf, 1, true, true, true, null, null, null, null);
+      cluster.waitActive();
+      Path dst = new Path(HDFS_DIR, "HelloWorld.jar");
+      cluster.getFileSystem().copyFromLocalFile(new Path(jarPath.toURI().toString()), dst);
+      jar = vfs.resolveFile(HDFS_URI + dst.toUri().getPath());
+    } else {
+      throw new IllegalArgumentException("Unknown classpath scheme " + scheme);
+    }
+  }
+
+  DefaultFileSystemManager getFileSystemManager() {
+    return vfs;
+  }
+
+  FileObject getJar() {
+    return jar;
+  }
+
+  void close() {
+    vfs.close();
+    if (null != cluster)
+      cluster.shutdown();
+  }
+
+}
@@ -0,0 +1,107 @@
+package org.apache.commons.vfs2.provider;
+
+import java.util.Random;
+
+import org.apache.commons.vfs2.CacheStrategy;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.cache.SoftRefFilesCache;
+import org.apache.commons.vfs2.impl.DefaultFileReplicator;
+import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * A MiniDFSCluster in the benchmark JVM holding a directory of small files and one large file, and
+ * a file system manager that reads them through {@link ReadOnlyHdfsFileProvider}. The NameNode RPCs
+ * of the shared DFS client are counted with {@link NameNodeRpcCounter}. The cluster has a single
+ * DataNode, so every block is local and short-circuit reads are used whenever the options enable
+ * them.
+ */
+class BenchmarkCluster {
+
+  static final String HDFS_URI = "hdfs://localhost:8020";
+  static final int CHILDREN = 100;
+  static final int DATA_SIZE = 4 * 1024 * 1024;
+
+  private static final Path DIR_PATH = new Path("/benchmark");
+  private static final Path CHILDREN_PATH = new Path(DIR_PATH, "children");
+  private static final Path DATA_PATH = new Path(DIR_PATH, "data.jar");
+
+  private final MiniDFSCluster cluster;
+  private final DefaultFileSystemManager vfs;
+  private final FileSystemOptions opts;
+  private final FileSystem client;
+
+  /**
+   * @param opts
+   *          options used to resolve files, they select the shared client whose RPCs are counted
+   */
+  BenchmarkCluster(FileSystemOptions opts) throws Exception {
+    Logger.getRootLogger().setLevel(Level.ERROR);
+    this.opts = opts;
+
+    Configuration conf = new Configuration();
+    conf.set(FileSystem.FS_DEFAULT_NAME_KEY, HDFS_URI);
+    conf.set("hadoop.security.token.service.use_ip", "true");
+    conf.set("dfs.datanode.data.dir.perm", "775");
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 1024 * 1024);
+    // the DataNode only hands out the paths of its block files to this user
+    conf.set("dfs.block.local-path-access.user", System.getProperty("user.name"));
+    cluster = new MiniDFSCluster(8020, conf, 1, true, true, true, null, null, null, null);
+    cluster.waitActive();
+
+    FileSystem hdfs = cluster.getFileSystem();
+    for (int i = 0; i < CHILDREN; i++)
+      hdfs.create(new Path(CHILDREN_PATH, "child-" + i + ".jar")).close();
+    byte[] data = new byte[DATA_SIZE];
+    new Random(42).nextBytes(data);
+    FSDataOutputStream out = hdfs.create(DATA_PATH);
+    out.write(data);
+    out.close();
+
+    vfs = new DefaultFileSystemManager();
+    vfs.addProvider("hdfs", new ReadOnlyHdfsFileProvider());
+    vfs.setFilesCache(new SoftRefFilesCache());
+    vfs.setReplicator(new DefaultFileReplicator());
+    vfs.setCacheStrategy(CacheStrategy.ON_RESOLVE);
+    vfs.init();
+
+    FileObject dir = vfs.resolveFile(getUri(DIR_PATH), opts);
+    client = HdfsClientRegistry.acquire(dir.getName().getRootURI(), opts);
+    NameNodeRpcCounter.install(client);
+  }
+
+  static String getUri(Path path) {
+    return HDFS_URI + path.toUri().getPath();
+  }
+
+  FileObject resolve(String uri) throws Exception {
+    return vfs.resolveFile(uri, opts);
+  }
+
+  FileObject getDirectory() throws Exception {
+    return resolve(getUri(CHILDREN_PATH));
+  }
+
+  String getChildUri(int i) {
+    return getUri(new Path(CHILDREN_PATH, "child-" + i + ".jar"));
+  }
+
+  FileObject getData() throws Exception {
+    return resolve(getUri(DATA_PATH));
+  }
+
+  void close() throws Exception {
+    HdfsClientRegistry.release(client);
+    vfs.close();
+    cluster.shutdown();
+  }
+
+}
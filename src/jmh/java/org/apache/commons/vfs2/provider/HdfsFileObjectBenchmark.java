@@ -0,0 +1,112 @@
+package org.apache.commons.vfs2.provider;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.FileType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Metadata operations of {@link HdfsFileObject} and {@link ReadOnlyHdfsFileSystem}. Each call is
+ * made on a new file object, resolved straight from the file system so that no state is carried
+ * over from the previous call. The file system asks the NameNode unless its status cache answers,
+ * and the rpcs result counts the RPCs made.
+ *
+ * Run with: mvn -Pjmh verify -Djmh.args="HdfsFileObjectBenchmark"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HdfsFileObjectBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class ClusterState {
+
+    /**
+     * Milliseconds a file status is reused, 0 disables the status cache
+     */
+    @Param({"0", "10000"})
+    long statusCacheTtl;
+
+    BenchmarkCluster cluster;
+    ReadOnlyHdfsFileSystem fs;
+    FileName dir;
+    FileName file;
+    String[] uris;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+      FileSystemOptions opts = new FileSystemOptions();
+      HdfsFileSystemConfigBuilder.getInstance().setStatusCacheTtl(opts, statusCacheTtl);
+      cluster = new BenchmarkCluster(opts);
+      FileObject dirObject = cluster.getDirectory();
+      fs = (ReadOnlyHdfsFileSystem) dirObject.getFileSystem();
+      dir = dirObject.getName();
+      file = cluster.resolve(cluster.getChildUri(0)).getName();
+      uris = new String[BenchmarkCluster.CHILDREN];
+      for (int i = 0; i < uris.length; i++)
+        uris[i] = cluster.getChildUri(i);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+      cluster.close();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class ThreadState {
+    int next = 0;
+  }
+
+  @Benchmark
+  public boolean exists(ClusterState state, RpcCounters counters) throws Exception {
+    boolean exists = state.fs.resolveFile(state.file).exists();
+    counters.update();
+    return exists;
+  }
+
+  @Benchmark
+  public FileType getType(ClusterState state, RpcCounters counters) throws Exception {
+    FileType type = state.fs.resolveFile(state.file).getType();
+    counters.update();
+    return type;
+  }
+
+  @Benchmark
+  public FileObject[] getChildren(ClusterState state, RpcCounters counters) throws Exception {
+    FileObject[] children = state.fs.resolveFile(state.dir).getChildren();
+    counters.update();
+    return children;
+  }
+
+  /**
+   * Resolve the files of the directory in turn from 8 threads, each resolve refreshes the file
+   */
+  @Benchmark
+  @Threads(8)
+  public FileObject resolveFileConcurrent(ClusterState state, ThreadState thread, RpcCounters counters) throws Exception {
+    FileObject file = state.cluster.resolve(state.uris[thread.next]);
+    thread.next = (thread.next + 1) % state.uris.length;
+    counters.update();
+    return file;
+  }
+
+}
@@ -0,0 +1,129 @@
+package org.apache.commons.vfs2.provider;
+
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.RandomAccessContent;
+import org.apache.commons.vfs2.util.RandomAccessMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads of a {@link BenchmarkCluster#DATA_SIZE} byte file through
+ * {@link HdfsReadOnlyRandomAccessContent} and through the file's input stream, with and without
+ * read ahead. The rpcs result counts the NameNode RPCs the reads cause.
+ *
+ * Run with: mvn -Pjmh verify -Djmh.args="HdfsReadBenchmark"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HdfsReadBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class ClusterState {
+
+    /**
+     * Bytes read ahead of small random reads, 0 disables read ahead
+     */
+    @Param({"0", "65536"})
+    int readAheadSize;
+
+    /**
+     * Bytes returned by each read of the random access benchmarks
+     */
+    @Param({"4096"})
+    int readSize;
+
+    BenchmarkCluster cluster;
+    FileObject data;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+      FileSystemOptions opts = new FileSystemOptions();
+      HdfsFileSystemConfigBuilder.getInstance().setReadAheadSize(opts, readAheadSize);
+      cluster = new BenchmarkCluster(opts);
+      data = cluster.getData();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+      cluster.close();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Reader {
+
+    RandomAccessContent content;
+    byte[] buffer;
+    long position = 0;
+    Random random = new Random(42);
+
+    @Setup(Level.Trial)
+    public void setup(ClusterState state) throws Exception {
+      content = state.data.getContent().getRandomAccessContent(RandomAccessMode.READ);
+      buffer = new byte[state.readSize];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+      content.close();
+    }
+  }
+
+  @Benchmark
+  public byte[] randomAccessSequential(ClusterState state, Reader reader, RpcCounters counters) throws Exception {
+    if (reader.position + state.readSize > BenchmarkCluster.DATA_SIZE)
+      reader.position = 0;
+    reader.content.seek(reader.position);
+    reader.content.readFully(reader.buffer, 0, state.readSize);
+    reader.position += state.readSize;
+    counters.update();
+    return reader.buffer;
+  }
+
+  @Benchmark
+  public byte[] randomAccessRandom(ClusterState state, Reader reader, RpcCounters counters) throws Exception {
+    reader.content.seek(reader.random.nextInt(BenchmarkCluster.DATA_SIZE - state.readSize));
+    reader.content.readFully(reader.buffer, 0, state.readSize);
+    counters.update();
+    return reader.buffer;
+  }
+
+  /**
+   * Open the file and read all of it, the score is files per second
+   */
+  @Benchmark
+  public long inputStreamFullFile(ClusterState state, RpcCounters counters) throws Exception {
+    InputStream in = state.data.getContent().getInputStream();
+    byte[] buffer = new byte[64 * 1024];
+    long total = 0;
+    try {
+      int n;
+      while ((n = in.read(buffer)) != -1)
+        total += n;
+    } finally {
+      in.close();
+    }
+    counters.update();
+    return total;
+  }
+
+}
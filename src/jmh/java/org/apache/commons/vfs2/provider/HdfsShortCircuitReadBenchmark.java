@@ -0,0 +1,100 @@
+package org.apache.commons.vfs2.provider;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.Selectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of opening, reading and replicating a {@link BenchmarkCluster#DATA_SIZE} byte jar through
+ * {@link ReadOnlyHdfsFileSystem} with short-circuit reads off and on. Latencies are sampled, so the
+ * results include percentiles as well as the mean.
+ *
+ * Run with: mvn -Pjmh verify -Djmh.args="HdfsShortCircuitReadBenchmark"
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HdfsShortCircuitReadBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class ClusterState {
+
+    /**
+     * Whether blocks are read straight from the DataNode's disks
+     */
+    @Param({"false", "true"})
+    boolean shortCircuit;
+
+    BenchmarkCluster cluster;
+    FileObject data;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+      FileSystemOptions opts = new FileSystemOptions();
+      HdfsFileSystemConfigBuilder.getInstance().setShortCircuitRead(opts, shortCircuit);
+      cluster = new BenchmarkCluster(opts);
+      data = cluster.getData();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+      cluster.close();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Buffer {
+    byte[] bytes = new byte[64 * 1024];
+  }
+
+  @Benchmark
+  public FileObject open(ClusterState state, RpcCounters counters) throws Exception {
+    state.data.getContent().getInputStream().close();
+    counters.update();
+    return state.data;
+  }
+
+  @Benchmark
+  public long read(ClusterState state, Buffer buffer, RpcCounters counters) throws Exception {
+    InputStream in = state.data.getContent().getInputStream();
+    long total = 0;
+    try {
+      int n;
+      while ((n = in.read(buffer.bytes)) != -1)
+        total += n;
+    } finally {
+      in.close();
+    }
+    counters.update();
+    return total;
+  }
+
+  @Benchmark
+  public long replicate(ClusterState state, RpcCounters counters) throws Exception {
+    File copy = state.data.getFileSystem().replicateFile(state.data, Selectors.SELECT_SELF);
+    long length = copy.length();
+    copy.delete();
+    counters.update();
+    return length;
+  }
+
+}
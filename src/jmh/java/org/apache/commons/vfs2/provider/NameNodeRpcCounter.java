@@ -0,0 +1,72 @@
+package org.apache.commons.vfs2.provider;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.hdfs.DFSClient;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+
+/**
+ * Counts the NameNode RPCs made by a DFS client, per calling thread. The client's NameNode proxy is
+ * replaced with one that counts every call before passing it on, so RPCs made by the input streams
+ * the client opens are counted too.
+ */
+class NameNodeRpcCounter {
+
+  private static final ThreadLocal<long[]> counts = new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      return new long[1];
+    }
+  };
+
+  private NameNodeRpcCounter() {}
+
+  /**
+   * Count the NameNode RPCs of a client
+   */
+  static void install(FileSystem fs) throws Exception {
+    if (!(fs instanceof DistributedFileSystem))
+      throw new IllegalArgumentException("Not a DFS client " + fs);
+    Field dfsField = DistributedFileSystem.class.getDeclaredField("dfs");
+    dfsField.setAccessible(true);
+    DFSClient client = (DFSClient) dfsField.get(fs);
+    Field namenodeField = DFSClient.class.getDeclaredField("namenode");
+    namenodeField.setAccessible(true);
+    final ClientProtocol namenode = (ClientProtocol) namenodeField.get(client);
+    if (Proxy.isProxyClass(namenode.getClass()) && Proxy.getInvocationHandler(namenode) instanceof CountingHandler)
+      return;
+    namenodeField.set(client, Proxy.newProxyInstance(ClientProtocol.class.getClassLoader(), new Class<?>[] {ClientProtocol.class},
+        new CountingHandler(namenode)));
+  }
+
+  /**
+   * @return NameNode RPCs made by the current thread
+   */
+  static long get() {
+    return counts.get()[0];
+  }
+
+  private static class CountingHandler implements InvocationHandler {
+    private final ClientProtocol namenode;
+
+    private CountingHandler(ClientProtocol namenode) {
+      this.namenode = namenode;
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      counts.get()[0]++;
+      try {
+        return method.invoke(namenode, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,34 @@
+package org.apache.commons.vfs2.provider;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reports the NameNode RPCs made by a benchmark thread as a secondary result next to the operation
+ * rate. Dividing the rpcs rate by the benchmark's score gives the RPCs per operation.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class RpcCounters {
+
+  public long rpcs;
+
+  private long start;
+
+  @Setup(Level.Iteration)
+  public void reset() {
+    start = NameNodeRpcCounter.get();
+    rpcs = 0;
+  }
+
+  /**
+   * Record the RPCs made by this thread since the iteration started
+   */
+  void update() {
+    rpcs = NameNodeRpcCounter.get() - start;
+  }
+
+}
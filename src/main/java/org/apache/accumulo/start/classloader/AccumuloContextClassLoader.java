@@ -2,50 +2,523 @@ package org.apache.accumulo.start.classloader;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
 import java.security.SecureClassLoader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
 import org.apache.commons.vfs2.FileSystemManager;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.log4j.Logger;
 
 /**
  * Classloader that delegates requests to a classloader mapped to a specific context
- * 
  *
+ * Contexts can be registered without building their classloader, which is then built the first
+ * time the context is used. If an idle timeout is set, the classloaders of contexts that were not
+ * used for that long are closed, and built again when the context is used again.
+ *
+ * The classloaders that are built at the same time can also be limited in number, in the classes
+ * they defined or in the size of their jars. When a limit is exceeded, the classloaders of the least
+ * recently used contexts are closed until the rest fits. The default context is never closed.
+ *
+ * Idle contexts and limits are checked periodically on a {@link ClasspathMonitorScheduler}, not on
+ * lookups. Lookups only record when a context was used, and only once the previous record is older
+ * than a fraction of the idle timeout.
+ *
+ * The metrics of every context can be registered with the platform MBean server, see
+ * {@link #setMetricsDomain(String)}. Contexts are then registered when they are added and
+ * unregistered when they are removed.
  */
 public class AccumuloContextClassLoader extends SecureClassLoader {
-  
+
+  private static final Logger log = Logger.getLogger(AccumuloContextClassLoader.class);
+
   public static final String DEFAULT_CONTEXT = "SYSTEM";
 
-  private Map<String, AccumuloReloadingVFSClassLoader> loaders = new ConcurrentHashMap<String, AccumuloReloadingVFSClassLoader>();
+  /**
+   * A context and what is needed to build its classloader again
+   */
+  private class Context {
+    private final String name;
+    private final String[] paths;
+    private final FileSystemOptions opts;
+    private final FileObject[] files;
+    private final long interval;
+    private final long maxInterval;
+    private final ClassLoaderMetrics metrics;
+    private volatile AccumuloReloadingVFSClassLoader cl = null;
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    private Context(String name, String[] paths, FileSystemOptions opts, FileObject[] files, long interval, long maxInterval, ClassLoaderMetrics metrics) {
+      this.name = name;
+      this.paths = paths;
+      this.opts = opts;
+      this.files = files;
+      this.interval = interval;
+      this.maxInterval = maxInterval;
+      this.metrics = metrics;
+    }
+
+    private AccumuloReloadingVFSClassLoader get() throws FileSystemException {
+      AccumuloReloadingVFSClassLoader current = cl;
+      if (null == current) {
+        boolean built = false;
+        synchronized (this) {
+          if (null == cl) {
+            cl = build();
+            lastUsed = System.currentTimeMillis();
+            built = true;
+          }
+          current = cl;
+        }
+        // outside the lock, closing other contexts takes theirs
+        if (built)
+          enforceLimits(this);
+      }
+      return current;
+    }
+
+    private AccumuloReloadingVFSClassLoader build() throws FileSystemException {
+      FileObject[] classPath = files;
+      if (null == classPath) {
+        classPath = new FileObject[paths.length];
+        for (int i = 0; i < paths.length; i++)
+          classPath[i] = vfs.resolveFile(paths[i], opts);
+      }
+      log.debug("Creating classloader for context " + name);
+      AccumuloReloadingVFSClassLoader loader = new AccumuloReloadingVFSClassLoader(classPath, vfs, parent, monitor, interval, maxInterval, metrics);
+      loader.setPrewarm(prewarm);
+      loader.setPrewarmClasses(prewarmClasses);
+      return loader;
+    }
+
+    /**
+     * Record a use of the context, unless the last recorded use is more recent than the granularity
+     */
+    private void touch(long now, long granularity) {
+      if (now - lastUsed > granularity)
+        lastUsed = now;
+    }
+
+    private synchronized void close() {
+      if (null != cl) {
+        cl.close();
+        cl = null;
+      }
+    }
+  }
+
+  /**
+   * Periodic check of idle contexts and limits, schedules the next check when done
+   */
+  private class Sweep implements Runnable {
+    public void run() {
+      try {
+        checkContexts(System.currentTimeMillis());
+      } catch (RuntimeException e) {
+        log.warn("Error closing classloaders of idle contexts", e);
+      }
+      scheduleSweep(this);
+    }
+  }
+
+  private final ConcurrentMap<String,Context> contexts = new ConcurrentHashMap<String,Context>();
+  private final Context defaultContext;
   private FileSystemManager vfs = null;
   private ClassLoader parent = null;
+  private ClasspathChangeDetector monitor = null;
+  private volatile long idleTimeout = 0;
+  private volatile int maxLoadedContexts = 0;
+  private volatile long maxDefinedClasses = 0;
+  private volatile long maxArchiveBytes = 0;
+  private volatile boolean prewarm = false;
+  private volatile Collection<String> prewarmClasses = Collections.emptySet();
+  private final Object evictionLock = new Object();
+  private final Object sweepLock = new Object();
+  private ClasspathMonitorScheduler scheduler = ClasspathMonitorScheduler.getInstance();
+  private Sweep sweep = null;
+  private ScheduledFuture<?> nextSweep = null;
+  private volatile String metricsDomain = null;
   
+  private static final long MAX_CHECK_INTERVAL = 1000;
+  
+  /**
+   * Granularity of the last use of contexts when no idle timeout is set
+   */
+  private static final long USE_GRANULARITY = MAX_CHECK_INTERVAL / 4;
+
   public AccumuloContextClassLoader(FileObject[] defaultClassPath, FileSystemManager vfs, ClassLoader parent) throws FileSystemException {
+    this(defaultClassPath, vfs, parent, new FullScanChangeDetector());
+  }
+
+  /**
+   * @param monitor
+   *          detects changes to the classpath of every context, one detector is shared by all contexts
+   */
+  public AccumuloContextClassLoader(FileObject[] defaultClassPath, FileSystemManager vfs, ClassLoader parent, ClasspathChangeDetector monitor)
+      throws FileSystemException {
+    this(defaultClassPath, vfs, parent, monitor, 0, 0);
+  }
+
+  /**
+   * @param interval
+   *          milliseconds between checks of the default context's classpath, zero or less to use the monitor's default
+   * @param maxInterval
+   *          when larger than interval, checks back off up to this many milliseconds while the classpath does not change
+   */
+  public AccumuloContextClassLoader(FileObject[] defaultClassPath, FileSystemManager vfs, ClassLoader parent, ClasspathChangeDetector monitor,
+      long interval, long maxInterval) throws FileSystemException {
+    this(new AccumuloReloadingVFSClassLoader(defaultClassPath, vfs, parent, monitor, interval, maxInterval), vfs, parent, monitor);
+  }
+
+  /**
+   * @param defaultLoader
+   *          classloader of the default context, already built
+   */
+  public AccumuloContextClassLoader(AccumuloReloadingVFSClassLoader defaultLoader, FileSystemManager vfs, ClassLoader parent, ClasspathChangeDetector monitor) {
     this.vfs = vfs;
     this.parent = parent;
-    loaders.put(DEFAULT_CONTEXT, new AccumuloReloadingVFSClassLoader(defaultClassPath, vfs, parent));
+    this.monitor = monitor;
+    this.defaultContext = new Context(DEFAULT_CONTEXT, null, null, defaultLoader.getFiles(), 0, 0, defaultLoader.getMetrics());
+    this.defaultContext.cl = defaultLoader;
+    contexts.put(DEFAULT_CONTEXT, defaultContext);
+  }
+
+  public void addContext(String context, FileObject[] files) throws FileSystemException {
+    addContext(context, files, 0, 0);
+  }
+
+  /**
+   * Build the classloader of a context unless it already exists. The classloader is built without holding a lock, so several contexts can be added at
+   * the same time.
+   *
+   * @param interval
+   *          milliseconds between checks of the context's classpath, zero or less to use the monitor's default
+   * @param maxInterval
+   *          when larger than interval, checks back off up to this many milliseconds while the classpath does not change
+   */
+  public void addContext(String context, FileObject[] files, long interval, long maxInterval) throws FileSystemException {
+    if (!contexts.containsKey(context)) {
+      Context ctx = new Context(context, null, null, files, interval, maxInterval, new ClassLoaderMetrics());
+      if (null == contexts.putIfAbsent(context, ctx)) {
+        registerMetrics(ctx);
+        ctx.get();
+      }
+    }
+  }
+
+  /**
+   * Add a context whose classloader was already built. If the context was added in the meantime, the given classloader is closed.
+   */
+  public void addContext(String context, AccumuloReloadingVFSClassLoader cl) {
+    addContext(context, cl, 0, 0);
+  }
+
+  /**
+   * Add a context whose classloader was already built. If the context was added in the meantime, the given classloader is closed.
+   *
+   * @param interval
+   *          interval the classloader was built with, used if it is built again
+   * @param maxInterval
+   *          maximum interval the classloader was built with, used if it is built again
+   */
+  public void addContext(String context, AccumuloReloadingVFSClassLoader cl, long interval, long maxInterval) {
+    Context ctx = new Context(context, null, null, cl.getFiles(), interval, maxInterval, cl.getMetrics());
+    ctx.cl = cl;
+    if (null != contexts.putIfAbsent(context, ctx))
+      cl.close();
+    else
+      registerMetrics(ctx);
+  }
+
+  /**
+   * Register a context without building its classloader. The classpath is resolved and the classloader built the first time the context is used.
+   *
+   * @param paths
+   *          URIs of the classpath entries
+   * @param opts
+   *          options used to resolve the classpath entries, may be null
+   * @param interval
+   *          milliseconds between checks of the context's classpath, zero or less to use the monitor's default
+   * @param maxInterval
+   *          when larger than interval, checks back off up to this many milliseconds while the classpath does not change
+   */
+  public void registerContext(String context, String[] paths, FileSystemOptions opts, long interval, long maxInterval) {
+    Context ctx = new Context(context, paths.clone(), opts, null, interval, maxInterval, new ClassLoaderMetrics());
+    if (null == contexts.putIfAbsent(context, ctx))
+      registerMetrics(ctx);
+  }
+
+  /**
+   * Register the metrics of every context with the platform MBean server, replacing any registered before under the same name. Contexts added later are
+   * registered as they are added, and contexts are unregistered when they are removed or this classloader is closed.
+   *
+   * @param domain
+   *          domain of the MBean names, null to stop registering new contexts
+   */
+  public void setMetricsDomain(String domain) {
+    this.metricsDomain = domain;
+    for (Context ctx : contexts.values())
+      registerMetrics(ctx);
+  }
+
+  private ObjectName getMetricsName(String domain, Context ctx) throws MalformedObjectNameException {
+    return new ObjectName(domain + ":type=ClassLoaderMetrics,context=" + ObjectName.quote(ctx.name));
+  }
+
+  private void registerMetrics(Context ctx) {
+    String domain = metricsDomain;
+    if (null == domain)
+      return;
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName name = getMetricsName(domain, ctx);
+      if (server.isRegistered(name))
+        server.unregisterMBean(name);
+      server.registerMBean(ctx.metrics, name);
+    } catch (JMException e) {
+      log.warn("Unable to register class loading metrics of context " + ctx.name, e);
+    }
+  }
+
+  private void unregisterMetrics(Context ctx) {
+    String domain = metricsDomain;
+    if (null == domain)
+      return;
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName name = getMetricsName(domain, ctx);
+      if (server.isRegistered(name))
+        server.unregisterMBean(name);
+    } catch (JMException e) {
+      log.warn("Unable to unregister class loading metrics of context " + ctx.name, e);
+    }
+  }
+
+  /**
+   * Close the classloaders of contexts that are not used for this long. They are built again when used again.
+   *
+   * @param millis
+   *          zero or less to keep classloaders until their context is removed
+   */
+  public void setIdleTimeout(long millis) {
+    this.idleTimeout = millis;
+    restartSweep();
+  }
+
+  /**
+   * @param max
+   *          most contexts other than the default context whose classloaders are built at the same time, zero or less for no limit
+   */
+  public void setMaxLoadedContexts(int max) {
+    this.maxLoadedContexts = max;
+    restartSweep();
+  }
+  
+  /**
+   * @param max
+   *          most classes defined by the current classloaders of all contexts, zero or less for no limit
+   */
+  public void setMaxDefinedClasses(long max) {
+    this.maxDefinedClasses = max;
+    restartSweep();
   }
   
-  public synchronized void addContext(String context, FileObject[] files) throws FileSystemException {
-    if (!loaders.containsKey(context))
-      loaders.put(context, new AccumuloReloadingVFSClassLoader(files, vfs, parent));
+  /**
+   * @param max
+   *          most bytes of jars in the classpaths of all built classloaders, zero or less for no limit
+   */
+  public void setMaxArchiveBytes(long max) {
+    this.maxArchiveBytes = max;
+    restartSweep();
+  }
+  
+  /**
+   * Sets whether reloads of every context warm up the new classloader before it replaces the current one, see
+   * {@link AccumuloReloadingVFSClassLoader#setPrewarm(boolean)}. Applies to the classloaders built later too.
+   */
+  public void setPrewarm(boolean prewarm) {
+    this.prewarm = prewarm;
+    for (Context ctx : contexts.values()) {
+      AccumuloReloadingVFSClassLoader cl = ctx.cl;
+      if (null != cl)
+        cl.setPrewarm(prewarm);
+    }
+  }
+  
+  /**
+   * Sets class names loaded into the new classloader of every context on reload, see
+   * {@link AccumuloReloadingVFSClassLoader#setPrewarmClasses(Collection)}. Applies to the classloaders built later too.
+   */
+  public void setPrewarmClasses(Collection<String> classNames) {
+    this.prewarmClasses = new ArrayList<String>(classNames);
+    for (Context ctx : contexts.values()) {
+      AccumuloReloadingVFSClassLoader cl = ctx.cl;
+      if (null != cl)
+        cl.setPrewarmClasses(classNames);
+    }
+  }
+  
+  /**
+   * @param scheduler
+   *          runs the periodic checks of idle contexts and limits, the shared scheduler is used if this is not called
+   */
+  public void setScheduler(ClasspathMonitorScheduler scheduler) {
+    synchronized (sweepLock) {
+      this.scheduler = scheduler;
+    }
+    restartSweep();
+  }
+  
+  /**
+   * @return milliseconds between checks of idle contexts and limits, zero or less if nothing needs to be checked
+   */
+  private long getCheckInterval() {
+    long timeout = idleTimeout;
+    boolean limited = maxLoadedContexts > 0 || maxDefinedClasses > 0 || maxArchiveBytes > 0;
+    if (timeout <= 0 && !limited)
+      return 0;
+    long interval = timeout > 0 ? Math.max(1, timeout / 2) : MAX_CHECK_INTERVAL;
+    if (limited)
+      interval = Math.min(interval, MAX_CHECK_INTERVAL);
+    return interval;
+  }
+  
+  /**
+   * Replace the pending check with one at the current interval, or none if nothing needs to be checked
+   */
+  private void restartSweep() {
+    synchronized (sweepLock) {
+      if (null != nextSweep)
+        nextSweep.cancel(false);
+      nextSweep = null;
+      sweep = new Sweep();
+      scheduleSweep(sweep);
+    }
+  }
+  
+  /**
+   * Schedule the next check, unless the sweep was replaced or stopped
+   */
+  private void scheduleSweep(Sweep current) {
+    synchronized (sweepLock) {
+      if (current != sweep)
+        return;
+      long interval = getCheckInterval();
+      nextSweep = interval > 0 ? scheduler.schedule(current, interval) : null;
+    }
+  }
+  
+  /**
+   * @return the classloader of a context, built if needed
+   * @throws IllegalArgumentException
+   *           if the context is not known
+   */
+  private AccumuloReloadingVFSClassLoader getLoader(String context) throws FileSystemException {
+    if (null == context)
+      context = DEFAULT_CONTEXT;
+    Context ctx = contexts.get(context);
+    if (null == ctx)
+      throw new IllegalArgumentException("Unknown context " + context);
+    long timeout = idleTimeout;
+    ctx.touch(System.currentTimeMillis(), timeout > 0 ? timeout / 4 : USE_GRANULARITY);
+    return ctx.get();
+  }
+
+  /**
+   * Close the classloaders of idle contexts and of contexts over the limits. Runs twice per idle timeout and at least once a second while limits are
+   * set, since contexts keep defining classes after they are built.
+   */
+  private void checkContexts(long now) {
+    long timeout = idleTimeout;
+    boolean limited = maxLoadedContexts > 0 || maxDefinedClasses > 0 || maxArchiveBytes > 0;
+    if (timeout > 0) {
+      for (Context ctx : contexts.values()) {
+        if (ctx != defaultContext && null != ctx.cl && now - ctx.lastUsed > timeout) {
+          log.debug("Closing classloader of idle context " + ctx.name);
+          ctx.close();
+        }
+      }
+    }
+    if (limited)
+      enforceLimits(null);
+  }
+  
+  /**
+   * Close the classloaders of the least recently used contexts until the built classloaders fit in the limits
+   * 
+   * @param keep
+   *          context that was just used and must not be closed, may be null
+   */
+  private void enforceLimits(Context keep) {
+    if (maxLoadedContexts <= 0 && maxDefinedClasses <= 0 && maxArchiveBytes <= 0)
+      return;
+    synchronized (evictionLock) {
+      List<Context> loaded = new ArrayList<Context>();
+      long classes = 0;
+      long bytes = 0;
+      for (Context ctx : contexts.values()) {
+        AccumuloReloadingVFSClassLoader cl = ctx.cl;
+        if (null == cl)
+          continue;
+        classes += cl.getDefinedClassCount();
+        bytes += cl.getArchiveBytes();
+        if (ctx != defaultContext)
+          loaded.add(ctx);
+      }
+      Collections.sort(loaded, new Comparator<Context>() {
+        public int compare(Context c1, Context c2) {
+          return c1.lastUsed < c2.lastUsed ? -1 : (c1.lastUsed == c2.lastUsed ? 0 : 1);
+        }
+      });
+      int count = loaded.size();
+      for (Context ctx : loaded) {
+        if (!overLimits(count, classes, bytes))
+          break;
+        AccumuloReloadingVFSClassLoader cl = ctx.cl;
+        if (ctx == keep || null == cl)
+          continue;
+        log.debug("Closing classloader of least recently used context " + ctx.name + " to stay within limits");
+        classes -= cl.getDefinedClassCount();
+        bytes -= cl.getArchiveBytes();
+        count--;
+        ctx.close();
+      }
+    }
+  }
+  
+  private boolean overLimits(int count, long classes, long bytes) {
+    return (maxLoadedContexts > 0 && count > maxLoadedContexts) || (maxDefinedClasses > 0 && classes > maxDefinedClasses)
+        || (maxArchiveBytes > 0 && bytes > maxArchiveBytes);
   }
   
   @Override
   public Class<?> loadClass(String name) throws ClassNotFoundException {
     return loadClass(DEFAULT_CONTEXT, name);
   }
-  
+
   public Class<?> loadClass(String context, String name) throws ClassNotFoundException {
-    if (null == context)
-      context = DEFAULT_CONTEXT;
-    return loaders.get(context).loadClass(name);
+    try {
+      return getLoader(context).loadClass(name);
+    } catch (FileSystemException e) {
+      throw new ClassNotFoundException("Unable to create classloader for context " + context, e);
+    }
   }
 
   @Override
@@ -54,9 +527,12 @@ public class AccumuloContextClassLoader extends SecureClassLoader {
   }
 
   public URL getResource(String context, String name) {
-    if (null == context)
-      context = DEFAULT_CONTEXT;
-    return loaders.get(context).getResource(name);
+    try {
+      return getLoader(context).getResource(name);
+    } catch (FileSystemException e) {
+      log.warn("Unable to create classloader for context " + context, e);
+      return null;
+    }
   }
 
   @Override
@@ -65,9 +541,7 @@ public class AccumuloContextClassLoader extends SecureClassLoader {
   }
 
   public Enumeration<URL> getResources(String context, String name) throws IOException {
-    if (null == context)
-      context = DEFAULT_CONTEXT;
-    return loaders.get(context).getResources(name);
+    return getLoader(context).getResources(name);
   }
 
   @Override
@@ -76,9 +550,12 @@ public class AccumuloContextClassLoader extends SecureClassLoader {
   }
 
   public InputStream getResourceAsStream(String context, String name) {
-    if (null == context)
-      context = DEFAULT_CONTEXT;
-    return loaders.get(context).getResourceAsStream(name);
+    try {
+      return getLoader(context).getResourceAsStream(name);
+    } catch (FileSystemException e) {
+      log.warn("Unable to create classloader for context " + context, e);
+      return null;
+    }
   }
 
   @Override
@@ -87,9 +564,7 @@ public class AccumuloContextClassLoader extends SecureClassLoader {
   }
 
   public synchronized void setDefaultAssertionStatus(String context, boolean enabled) {
-    if (null == context)
-      context = DEFAULT_CONTEXT;
-    loaders.get(context).setDefaultAssertionStatus(enabled);
+    getClassLoader(context).setDefaultAssertionStatus(enabled);
   }
 
   @Override
@@ -98,9 +573,7 @@ public class AccumuloContextClassLoader extends SecureClassLoader {
   }
 
   public synchronized void setPackageAssertionStatus(String context, String packageName, boolean enabled) {
-    if (null == context)
-      context = DEFAULT_CONTEXT;
-    loaders.get(context).setPackageAssertionStatus(packageName, enabled);
+    getClassLoader(context).setPackageAssertionStatus(packageName, enabled);
   }
 
   @Override
@@ -109,9 +582,7 @@ public class AccumuloContextClassLoader extends SecureClassLoader {
   }
 
   public synchronized void setClassAssertionStatus(String context, String className, boolean enabled) {
-    if (null == context)
-      context = DEFAULT_CONTEXT;
-    loaders.get(context).setClassAssertionStatus(className, enabled);
+    getClassLoader(context).setClassAssertionStatus(className, enabled);
   }
 
   @Override
@@ -120,27 +591,62 @@ public class AccumuloContextClassLoader extends SecureClassLoader {
   }
 
   public synchronized void clearAssertionStatus(String context) {
-    if (null == context)
-      context = DEFAULT_CONTEXT;
-    loaders.get(context).clearAssertionStatus();
+    getClassLoader(context).clearAssertionStatus();
   }
-  
+
+  /**
+   * @return the classloader of a context, built if the context was registered but not used yet
+   */
   public AccumuloReloadingVFSClassLoader getClassLoader(String context) {
-    return loaders.get(context);
+    try {
+      return getLoader(context);
+    } catch (FileSystemException e) {
+      throw new RuntimeException("Unable to create classloader for context " + context, e);
+    }
   }
-  
+
+  /**
+   * @return the metrics of a context, kept across the classloaders built for it, without building its classloader
+   * @throws IllegalArgumentException
+   *           if the context is not known
+   */
+  public ClassLoaderMetrics getMetrics(String context) {
+    Context ctx = contexts.get(null == context ? DEFAULT_CONTEXT : context);
+    if (null == ctx)
+      throw new IllegalArgumentException("Unknown context " + context);
+    return ctx.metrics;
+  }
+
+  /**
+   * @return true if the classloader of the context is currently built
+   */
+  public boolean isLoaded(String context) {
+    Context ctx = contexts.get(context);
+    return null != ctx && null != ctx.cl;
+  }
+
   public void removeContext(String context) {
     if (null != context && !(DEFAULT_CONTEXT.equals(context))) {
-      AccumuloReloadingVFSClassLoader cl = loaders.remove(context);
-      cl.close();
+      Context ctx = contexts.remove(context);
+      if (null != ctx) {
+        unregisterMetrics(ctx);
+        ctx.close();
+      }
     }
   }
-  
+
   public void close() {
-    for (Entry<String, AccumuloReloadingVFSClassLoader> e : loaders.entrySet()) {
-      e.getValue().close();
+    synchronized (sweepLock) {
+      sweep = null;
+      if (null != nextSweep)
+        nextSweep.cancel(false);
+      nextSweep = null;
     }
-    loaders.clear();
+    for (Context ctx : contexts.values()) {
+      unregisterMetrics(ctx);
+      ctx.close();
+    }
+    contexts.clear();
   }
-  
+
 }
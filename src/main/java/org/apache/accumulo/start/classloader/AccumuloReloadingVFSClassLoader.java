@@ -2,9 +2,27 @@ package org.apache.accumulo.start.classloader;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.security.SecureClassLoader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.vfs2.FileChangeEvent;
@@ -12,134 +30,737 @@ import org.apache.commons.vfs2.FileListener;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
 import org.apache.commons.vfs2.FileSystemManager;
-import org.apache.commons.vfs2.impl.DefaultFileMonitor;
-import org.apache.commons.vfs2.impl.VFSClassLoader;
+import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
+import org.apache.commons.vfs2.provider.CachingHdfsFileReplicator;
+import org.apache.commons.vfs2.provider.HdfsJarFileSystem;
+import org.apache.commons.vfs2.provider.ReadOnlyHdfsFileSystem;
 import org.apache.log4j.Logger;
 
 /**
  * Classloader that delegates operations to a VFSClassLoader object. This class also listens
  * for changes in any of the files/directories that are in the classpath and will recreate
  * the delegate object if there is any change in the classpath.
+ * 
+ * Lookups read the volatile delegate reference without locking, so concurrent class and
+ * resource lookups never block each other. The lock is only used to serialize the
+ * replacement of the delegate when the classpath changes.
+ * 
+ * Classes resolved through a delegate are cached along with it, tagged by the delegate's
+ * generation, so repeated lookups of the same class are a single hash probe. The cache is
+ * dropped as a whole when the delegate is replaced.
+ * 
+ * Class names and resource paths that could not be found are remembered in a bounded miss
+ * cache that is also dropped when the delegate is replaced, so repeated probes for optional
+ * classes do not search every file in the classpath again. Lookups that failed because an
+ * archive could not be read are not remembered and are tried again on the next request.
+ * 
+ * The delegate keeps an index from package to the archives that contain it, so a lookup only
+ * opens the archives that hold the requested package. When a file event is received only the
+ * archive named in the event is indexed again.
+ * 
+ * Reloads are incremental. The archives opened for the current delegate are handed to the next
+ * one, and only the archive named in a file event is opened again. Unchanged archives keep their
+ * open handles and their replicated local copies. A replaced archive is closed once no classloader
+ * that searches it is reachable, since classes defined by an earlier delegate may still resolve
+ * other classes and resources through it. Closing the classloader retires all of its archives, and
+ * the ones still in use are closed later by the reload pool.
+ * 
+ * File events are coalesced. A reload happens on a background thread once the classpath has been
+ * free of events for a quiet period, so copying many jars into a directory causes one reload.
+ * Reloads run on a small pool shared by all classloaders, see {@link #setReloadThreads(int)}.
+ * Optionally the new delegate is warmed up with the classes in use before it is swapped in.
  *
  */
-public class AccumuloReloadingVFSClassLoader extends SecureClassLoader implements FileListener {
+public class AccumuloReloadingVFSClassLoader extends SecureClassLoader implements FileListener, ClasspathChangeDetector.PollListener {
   
   private static final Logger log = Logger.getLogger(AccumuloReloadingVFSClassLoader.class);
 
+  public static final int DEFAULT_MAX_MISSES = 10000;
+  
+  public static final long DEFAULT_RELOAD_QUIET_PERIOD = 500;
+  
+  public static final int DEFAULT_RELOAD_THREADS = 2;
+  
+  private static final AtomicInteger reloaderCount = new AtomicInteger(0);
+  
+  private static final ScheduledThreadPoolExecutor reloader = new ScheduledThreadPoolExecutor(DEFAULT_RELOAD_THREADS, new ThreadFactory() {
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "AccumuloReloadingVFSClassLoader reloader " + reloaderCount.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  });
+  
+  public static final long ORPHAN_SWEEP_INTERVAL = 60 * 1000;
+  
+  // retired archives of closed classloaders, no longer polled, by the manager that opened them
+  private static final Map<List<OpenArchive>,FileSystemManager> orphans = new IdentityHashMap<List<OpenArchive>,FileSystemManager>();
+  private static ScheduledFuture<?> orphanSweep = null;
+
   private FileObject[] files = null;
   private FileSystemManager vfs = null;
   private ClassLoader parent = null;
-  private DefaultFileMonitor monitor = null;
-  private volatile VFSClassLoader cl = null;
+  private ClasspathChangeDetector monitor = null;
+  private volatile Delegate cl = null;
+  private final Map<String,OpenArchive> archives = new HashMap<String,OpenArchive>();
+  private final List<OpenArchive> retired = new ArrayList<OpenArchive>();
+  private boolean closed = false;
+  private long generation = 0;
+  private int maxMisses = DEFAULT_MAX_MISSES;
   private final ReentrantLock lock = new ReentrantLock(true);
+  private final Set<String> pending = new HashSet<String>();
+  private int pendingEvents = 0;
+  private ScheduledFuture<?> pendingReload = null;
+  private long quietPeriod = DEFAULT_RELOAD_QUIET_PERIOD;
+  private final AtomicLong reloads = new AtomicLong(0);
+  private volatile int lastReloadEvents = 0;
+  private volatile boolean prewarm = false;
+  private volatile Set<String> prewarmClasses = Collections.emptySet();
+  private final ClassLoaderMetrics metrics;
+  
+  /**
+   * An opened archive and the classloaders that search it
+   */
+  private static class OpenArchive {
+    
+    private final FileObject archive;
+    private final FileObject source;
+    private final List<WeakReference<ClassLoader>> users = new ArrayList<WeakReference<ClassLoader>>(2);
+    
+    /**
+     * @param source
+     *          the file resolved for the archive's generation, or null if the archive was opened from the classpath file
+     */
+    private OpenArchive(FileObject archive, FileObject source) {
+      this.archive = archive;
+      this.source = source;
+    }
+    
+    private void addUser(ClassLoader loader) {
+      Iterator<WeakReference<ClassLoader>> iter = users.iterator();
+      while (iter.hasNext())
+        if (null == iter.next().get())
+          iter.remove();
+      users.add(new WeakReference<ClassLoader>(loader));
+    }
+    
+    private boolean inUse() {
+      for (WeakReference<ClassLoader> user : users)
+        if (null != user.get())
+          return true;
+      return false;
+    }
+  }
+  
+  /**
+   * An IndexedVFSClassLoader and the classes that have been resolved through it. A new instance is
+   * created with the next generation number every time the classpath changes.
+   */
+  private static class Delegate {
+    
+    private final IndexedVFSClassLoader loader;
+    private final long generation;
+    private final ClassLoaderMetrics metrics;
+    private final ConcurrentHashMap<String,Class<?>> classes = new ConcurrentHashMap<String,Class<?>>();
+    private final ConcurrentHashMap<String,Boolean> missingClasses = new ConcurrentHashMap<String,Boolean>();
+    private final ConcurrentHashMap<String,Boolean> missingResources = new ConcurrentHashMap<String,Boolean>();
+    private volatile int maxMisses;
+    
+    private Delegate(IndexedVFSClassLoader loader, long generation, int maxMisses, ClassLoaderMetrics metrics) {
+      this.loader = loader;
+      this.generation = generation;
+      this.maxMisses = maxMisses;
+      this.metrics = metrics;
+    }
+    
+    private void miss(ConcurrentHashMap<String,Boolean> misses, String name) {
+      if (maxMisses <= 0)
+        return;
+      // Start over rather than grow past the bound, misses are cheap to learn again
+      if (misses.size() >= maxMisses)
+        misses.clear();
+      misses.put(name, Boolean.TRUE);
+    }
+    
+    private Class<?> loadClass(String name) throws ClassNotFoundException {
+      Class<?> clazz = classes.get(name);
+      if (null == clazz) {
+        if (missingClasses.containsKey(name)) {
+          metrics.hit();
+          throw new ClassNotFoundException(name);
+        }
+        long start = System.nanoTime();
+        try {
+          clazz = loader.loadClass(name);
+        } catch (ClassNotFoundException e) {
+          // a cause means the archives could not be read, the class may be there next time
+          if (null == e.getCause())
+            miss(missingClasses, name);
+          throw e;
+        } finally {
+          metrics.miss(System.nanoTime() - start);
+        }
+        classes.put(name, clazz);
+      } else {
+        metrics.hit();
+      }
+      return clazz;
+    }
+    
+    private URL getResource(String name) {
+      if (missingResources.containsKey(name))
+        return null;
+      URL url = loader.getResource(name);
+      // null is also returned when the archives could not be read, only remember real misses
+      if (null == url && loader.isAbsent(name))
+        miss(missingResources, name);
+      return url;
+    }
+    
+    private Enumeration<URL> getResources(String name) throws IOException {
+      if (missingResources.containsKey(name))
+        return Collections.enumeration(Collections.<URL> emptyList());
+      Enumeration<URL> urls = loader.getResources(name);
+      if (!urls.hasMoreElements())
+        miss(missingResources, name);
+      return urls;
+    }
+    
+    private InputStream getResourceAsStream(String name) {
+      URL url = getResource(name);
+      if (null == url)
+        return null;
+      try {
+        return url.openStream();
+      } catch (IOException e) {
+        return null;
+      }
+    }
+  }
   
   public AccumuloReloadingVFSClassLoader(FileObject[] files, FileSystemManager vfs, ClassLoader parent) throws FileSystemException {
+    this(files, vfs, parent, new FullScanChangeDetector(), 0, 0);
+  }
+  
+  /**
+   * @param monitor
+   *          detects changes to the classpath, may be shared with other classloaders
+   * @param interval
+   *          milliseconds between checks of the classpath, zero or less to use the monitor's default
+   * @param maxInterval
+   *          when larger than interval, checks back off up to this many milliseconds while the
+   *          classpath does not change
+   */
+  public AccumuloReloadingVFSClassLoader(FileObject[] files, FileSystemManager vfs, ClassLoader parent, ClasspathChangeDetector monitor, long interval,
+      long maxInterval) throws FileSystemException {
+    this(files, vfs, parent, monitor, interval, maxInterval, new ClassLoaderMetrics());
+  }
+  
+  /**
+   * @param metrics
+   *          where to record the cost of class loading, may be shared with the earlier classloaders of the same context
+   */
+  public AccumuloReloadingVFSClassLoader(FileObject[] files, FileSystemManager vfs, ClassLoader parent, ClasspathChangeDetector monitor, long interval,
+      long maxInterval, ClassLoaderMetrics metrics) throws FileSystemException {
     this.files = files;
     this.vfs = vfs;
     this.parent = parent;
+    this.monitor = monitor;
+    this.metrics = metrics;
     
-    if (null != parent)
-      cl = new VFSClassLoader(files, vfs, parent);
-    else
-      cl = new VFSClassLoader(files, vfs);
+    cl = createDelegate(Collections.<String> emptySet());
     
-    monitor = new DefaultFileMonitor(this);
-    monitor.setDelay(2000);
-    monitor.setRecursive(true);
-    for (FileObject file : files)
-      monitor.addFile(file);
-    monitor.start();
+    monitor.watch(files, this, interval, maxInterval);
   }
   
-  public FileObject[] getFiles() {
-    return this.files;
+  /**
+   * Build the next delegate. Nothing changes if this fails, the archives opened for it are closed
+   * and the current delegate keeps its archives.
+   * 
+   * @param changed
+   *          URIs of the archives that changed, their packages are indexed again while the index
+   *          entries of all other archives are carried over from the current delegate
+   */
+  private Delegate createDelegate(Collection<String> changed) throws FileSystemException {
+    IndexedVFSClassLoader previous = null == cl ? null : cl.loader;
+    Map<String,OpenArchive> opened = new HashMap<String,OpenArchive>();
+    List<OpenArchive> created = new ArrayList<OpenArchive>();
+    IndexedVFSClassLoader loader = null;
+    try {
+      loader = new IndexedVFSClassLoader(openClasspath(changed, opened, created), vfs, parent, previous, changed);
+    } finally {
+      if (null == loader)
+        for (OpenArchive archive : created)
+          closeArchive(vfs, archive);
+    }
+    for (Map.Entry<String,OpenArchive> entry : archives.entrySet())
+      if (opened.get(entry.getKey()) != entry.getValue())
+        retire(entry.getValue());
+    archives.clear();
+    archives.putAll(opened);
+    for (OpenArchive archive : opened.values())
+      archive.addUser(loader);
+    return new Delegate(loader, generation++, maxMisses, metrics);
   }
   
   /**
-   * Should be ok if this is not called because the thread started by DefaultFileMonitor is a daemon thread
+   * Open the archives in the classpath, reusing the ones opened for the current delegate unless
+   * they are in the changed set.
+   * 
+   * @param opened
+   *          filled with the archives of the classpath by URI
+   * @param created
+   *          filled with the archives opened by this call
+   * @return the roots of the classpath, opened archives in place of archive files
    */
-  public void close() {
-    monitor.stop();
+  private FileObject[] openClasspath(Collection<String> changed, Map<String,OpenArchive> opened, List<OpenArchive> created) throws FileSystemException {
+    List<FileObject> roots = new ArrayList<FileObject>(files.length);
+    for (FileObject file : files) {
+      String uri = file.getName().getURI();
+      OpenArchive archive = null;
+      if (changed.contains(uri))
+        invalidateStatus(file);
+      else
+        archive = archives.get(uri);
+      if (null == archive) {
+        file.refresh();
+        if (!file.exists())
+          continue;
+        if (vfs.canCreateFileSystem(file)) {
+          archive = openArchive(file);
+          created.add(archive);
+        }
+      }
+      if (null != archive) {
+        opened.put(uri, archive);
+        roots.add(archive.archive);
+      } else {
+        roots.add(file);
+      }
+    }
+    return roots.toArray(new FileObject[roots.size()]);
   }
-
-  public void fileCreated(FileChangeEvent event) throws Exception {
+  
+  /**
+   * Open an archive, recording the bytes copied to local disk if it is an HDFS file that is not
+   * read in place. After the first delegate, archives are opened from the file resolved with
+   * options tagged with the new generation, since opening it again from the same file would return
+   * the cached file system of the archive it replaces.
+   */
+  private OpenArchive openArchive(FileObject file) throws FileSystemException {
+    FileObject source = file;
+    if (null != cl)
+      source = vfs.resolveFile(file.getName().getURI(),
+          ArchiveGenerationConfigBuilder.getInstance().withGeneration(file.getFileSystem().getFileSystemOptions(), generation));
+    if (!(source.getFileSystem() instanceof ReadOnlyHdfsFileSystem))
+      return new OpenArchive(vfs.createFileSystem(source), source == file ? null : source);
+    CachingHdfsFileReplicator cache = null;
+    if (vfs instanceof DefaultFileSystemManager && ((DefaultFileSystemManager) vfs).getReplicator() instanceof CachingHdfsFileReplicator)
+      cache = (CachingHdfsFileReplicator) ((DefaultFileSystemManager) vfs).getReplicator();
+    long before = null == cache ? 0 : cache.getBytesReplicatedByCurrentThread();
+    FileObject archive = vfs.createFileSystem(source);
+    if (null != cache)
+      metrics.replicated(cache.getBytesReplicatedByCurrentThread() - before);
+    else if (!(archive.getFileSystem() instanceof HdfsJarFileSystem))
+      metrics.replicated(source.getContent().getSize());
+    return new OpenArchive(archive, source == file ? null : source);
+  }
+  
+  /**
+   * Drop any file status cached for the file so the next check asks the file system again
+   */
+  private static void invalidateStatus(FileObject file) {
+    if (file.getFileSystem() instanceof ReadOnlyHdfsFileSystem)
+      ((ReadOnlyHdfsFileSystem) file.getFileSystem()).invalidateFileStatus(file.getName());
+  }
+  
+  private void retire(OpenArchive archive) {
+    synchronized (retired) {
+      retired.add(archive);
+    }
+  }
+  
+  /**
+   * Close the retired archives that no reachable classloader searches any more
+   */
+  private void closeRetired() {
+    closeRetired(vfs, retired);
+  }
+  
+  private static void closeRetired(FileSystemManager vfs, List<OpenArchive> retired) {
+    synchronized (retired) {
+      Iterator<OpenArchive> iter = retired.iterator();
+      while (iter.hasNext()) {
+        OpenArchive archive = iter.next();
+        if (!archive.inUse()) {
+          closeArchive(vfs, archive);
+          iter.remove();
+        }
+      }
+    }
+  }
+  
+  /**
+   * Close the file system of an archive, and the file system of the file it was opened from if that
+   * was resolved for the archive's generation
+   */
+  private static void closeArchive(FileSystemManager vfs, OpenArchive archive) {
+    if (vfs instanceof DefaultFileSystemManager) {
+      ((DefaultFileSystemManager) vfs).closeFileSystem(archive.archive.getFileSystem());
+      if (null != archive.source)
+        ((DefaultFileSystemManager) vfs).closeFileSystem(archive.source.getFileSystem());
+    }
+  }
+  
+  /**
+   * Take the lock, recording how long it took
+   */
+  private void lock() {
+    long start = System.nanoTime();
     lock.lock();
+    metrics.locked(System.nanoTime() - start);
+  }
+  
+  public void polled(long nanos) {
+    metrics.polled(nanos);
+    closeRetired();
+  }
+  
+  /**
+   * @return the archive opened for a file of the classpath, or null if it is not open
+   */
+  FileObject getArchive(String uri) {
+    lock();
     try {
-      if (log.isDebugEnabled())
-        log.debug(event.getFile().getURL().toString() + " created, recreating classloader");
-      cl = new VFSClassLoader(files, vfs, parent);
+      OpenArchive archive = archives.get(uri);
+      return null == archive ? null : archive.archive;
     } finally {
       lock.unlock();
     }
   }
-
-  public void fileDeleted(FileChangeEvent event) throws Exception {
-    lock.lock();
+  
+  /**
+   * @return number of replaced archives that are kept open for classloaders that may still use them
+   */
+  int getRetiredArchiveCount() {
+    synchronized (retired) {
+      return retired.size();
+    }
+  }
+  
+  /**
+   * @return the metrics of this classloader
+   */
+  public ClassLoaderMetrics getMetrics() {
+    return metrics;
+  }
+  
+  public FileObject[] getFiles() {
+    return this.files;
+  }
+  
+  /**
+   * @return the generation of the current delegate, incremented every time the classpath changes
+   */
+  public long getGeneration() {
+    return this.cl.generation;
+  }
+  
+  /**
+   * @return true if the class was already resolved through the current delegate
+   */
+  boolean isResolved(String name) {
+    return this.cl.classes.containsKey(name);
+  }
+  
+  /**
+   * @return number of classes defined by the current delegate
+   */
+  public int getDefinedClassCount() {
+    return this.cl.loader.getDefinedClassCount();
+  }
+  
+  /**
+   * @return total size of the archives in the current classpath
+   */
+  public long getArchiveBytes() {
+    return this.cl.loader.getArchiveBytes();
+  }
+  
+  /**
+   * Sets the maximum number of missing class names and the maximum number of missing resource
+   * paths remembered until the next reload. Zero disables the miss cache.
+   */
+  public void setMaxMisses(int maxMisses) {
+    this.maxMisses = maxMisses;
+    this.cl.maxMisses = maxMisses;
+  }
+  
+  /**
+   * Stop watching the classpath and retire every archive. Archives that classes of this
+   * classloader can still reach stay open until they are unreachable, and are then closed by the
+   * reload pool.
+   */
+  public void close() {
+    monitor.unwatch(this);
+    synchronized (pending) {
+      if (null != pendingReload)
+        pendingReload.cancel(false);
+    }
+    lock();
     try {
-      if (log.isDebugEnabled())
-        log.debug(event.getFile().getURL().toString() + " changed, recreating classloader");
-      cl = new VFSClassLoader(files, vfs, parent);
+      if (closed)
+        return;
+      closed = true;
+      for (OpenArchive archive : archives.values())
+        retire(archive);
+      archives.clear();
     } finally {
       lock.unlock();
     }
+    closeRetired();
+    synchronized (retired) {
+      if (retired.isEmpty())
+        return;
+    }
+    orphan(vfs, retired);
+  }
+  
+  /**
+   * Hand the retired archives of a closed classloader to the reload pool. This is static so the
+   * sweep does not keep the closed classloader, and through it the archives, reachable.
+   */
+  private static void orphan(FileSystemManager vfs, List<OpenArchive> retired) {
+    synchronized (orphans) {
+      orphans.put(retired, vfs);
+      if (null == orphanSweep) {
+        orphanSweep = reloader.scheduleWithFixedDelay(new Runnable() {
+          public void run() {
+            closeOrphans();
+          }
+        }, ORPHAN_SWEEP_INTERVAL, ORPHAN_SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+  
+  /**
+   * Close the archives of closed classloaders that are no longer reachable, and stop sweeping once
+   * all of them are closed
+   */
+  static void closeOrphans() {
+    synchronized (orphans) {
+      Iterator<Map.Entry<List<OpenArchive>,FileSystemManager>> iter = orphans.entrySet().iterator();
+      while (iter.hasNext()) {
+        Map.Entry<List<OpenArchive>,FileSystemManager> entry = iter.next();
+        try {
+          closeRetired(entry.getValue(), entry.getKey());
+        } catch (RuntimeException e) {
+          // the file system manager was closed in the meantime, and the archives with it
+          log.debug("Unable to close the archives of a closed classloader", e);
+          iter.remove();
+          continue;
+        }
+        synchronized (entry.getKey()) {
+          if (entry.getKey().isEmpty())
+            iter.remove();
+        }
+      }
+      if (orphans.isEmpty() && null != orphanSweep) {
+        orphanSweep.cancel(false);
+        orphanSweep = null;
+      }
+    }
+  }
+
+  public void fileCreated(FileChangeEvent event) throws Exception {
+    if (log.isDebugEnabled())
+      log.debug(event.getFile().getURL().toString() + " created, recreating classloader");
+    changed(event);
+  }
+
+  public void fileDeleted(FileChangeEvent event) throws Exception {
+    if (log.isDebugEnabled())
+      log.debug(event.getFile().getURL().toString() + " deleted, recreating classloader");
+    changed(event);
   }
 
   public void fileChanged(FileChangeEvent event) throws Exception {
-    lock.lock();
+    if (log.isDebugEnabled())
+      log.debug(event.getFile().getURL().toString() + " changed, recreating classloader");
+    changed(event);
+  }
+  
+  /**
+   * Record the file named in the event and schedule a reload once no further events have arrived
+   * for the quiet period. Every event restarts the quiet period.
+   */
+  private void changed(FileChangeEvent event) throws FileSystemException {
+    synchronized (pending) {
+      pending.add(event.getFile().getName().getURI());
+      pendingEvents++;
+      if (null != pendingReload)
+        pendingReload.cancel(false);
+      if (quietPeriod > 0) {
+        pendingReload = reloader.schedule(new Runnable() {
+          public void run() {
+            try {
+              reload();
+            } catch (FileSystemException e) {
+              log.error("Error recreating classloader", e);
+            }
+          }
+        }, quietPeriod, TimeUnit.MILLISECONDS);
+        return;
+      }
+    }
+    reload();
+  }
+  
+  /**
+   * Replace the delegate, folding in all events received since the last reload. If the new
+   * delegate cannot be built the events are kept and folded into the next reload.
+   */
+  private void reload() throws FileSystemException {
+    lock();
     try {
+      if (closed)
+        return;
+      long start = System.nanoTime();
+      Set<String> changed = null;
+      int events = 0;
+      synchronized (pending) {
+        changed = new HashSet<String>(pending);
+        events = pendingEvents;
+        pending.clear();
+        pendingEvents = 0;
+        pendingReload = null;
+      }
+      if (changed.isEmpty())
+        return;
+      Delegate next = null;
+      try {
+        next = createDelegate(changed);
+      } finally {
+        // keep the changes for the next reload, the current delegate and its archives are untouched
+        if (null == next) {
+          synchronized (pending) {
+            pending.addAll(changed);
+            pendingEvents += events;
+          }
+        }
+      }
+      if (prewarm)
+        prewarm(next);
+      cl = next;
+      closeRetired();
+      reloads.incrementAndGet();
+      metrics.reloaded(System.nanoTime() - start);
+      lastReloadEvents = events;
       if (log.isDebugEnabled())
-        log.debug(event.getFile().getURL().toString() + " deleted, recreating classloader");
-      cl = new VFSClassLoader(files, vfs, parent);
+        log.debug("Recreated classloader for " + events + " file events on " + changed);
     } finally {
       lock.unlock();
     }
   }
+  
+  /**
+   * Load the configured classes and the classes resolved through the current delegate into a new
+   * delegate before it is made visible to callers
+   */
+  private void prewarm(Delegate next) {
+    Set<String> names = new HashSet<String>(prewarmClasses);
+    names.addAll(cl.classes.keySet());
+    long start = System.currentTimeMillis();
+    int loaded = 0;
+    for (String name : names) {
+      try {
+        next.loadClass(name);
+        loaded++;
+      } catch (ClassNotFoundException e) {
+        // no longer in the classpath
+      } catch (LinkageError e) {
+        log.debug("Unable to preload " + name, e);
+      }
+    }
+    if (log.isDebugEnabled())
+      log.debug("Preloaded " + loaded + " of " + names.size() + " classes in " + (System.currentTimeMillis() - start) + "ms");
+  }
+  
+  /**
+   * When enabled, a reload builds the new delegate and loads into it the classes that were
+   * resolved through the current delegate, plus any classes set with
+   * {@link #setPrewarmClasses(Collection)}, before the new delegate replaces the current one.
+   * Callers keep using the current delegate while this happens.
+   */
+  public void setPrewarm(boolean prewarm) {
+    this.prewarm = prewarm;
+  }
+  
+  /**
+   * Sets class names to load into a new delegate before it replaces the current one, in addition
+   * to the classes recorded from the current delegate.
+   */
+  public void setPrewarmClasses(Collection<String> classNames) {
+    this.prewarmClasses = new HashSet<String>(classNames);
+  }
+  
+  /**
+   * Sets the number of threads that run the reloads of all classloaders. A slow reload, like one
+   * copying large jars from HDFS, only holds up the reloads of other classloaders while every
+   * thread is busy.
+   */
+  public static void setReloadThreads(int threads) {
+    reloader.setCorePoolSize(Math.max(1, threads));
+  }
+  
+  /**
+   * @return the number of times the delegate was replaced because of file events
+   */
+  public long getReloadCount() {
+    return reloads.get();
+  }
+  
+  /**
+   * @return the number of file events folded into the most recent reload
+   */
+  public int getLastReloadEventCount() {
+    return lastReloadEvents;
+  }
+  
+  /**
+   * Sets how long the classpath must be free of file events before the delegate is replaced. A
+   * burst of events, like a directory of jars being copied in, results in a single reload. Zero
+   * replaces the delegate on the monitor thread for every event.
+   */
+  public void setReloadQuietPeriod(long millis) {
+    this.quietPeriod = millis;
+  }
 
   @Override
   public Class<?> loadClass(String name) throws ClassNotFoundException {
-    lock.lock();
-    try {
-      return this.cl.loadClass(name);
-    } finally {
-      lock.unlock();
-    }
+    return this.cl.loadClass(name);
   }
 
   @Override
   public URL getResource(String name) {
-    lock.lock();
-    try {
-      return this.cl.getResource(name);
-    } finally {
-      lock.unlock();
-    }
+    return this.cl.getResource(name);
   }
 
   @Override
   public Enumeration<URL> getResources(String name) throws IOException {
-    lock.lock();
-    try {
-      return this.cl.getResources(name);
-    } finally {
-      lock.unlock();
-    }
+    return this.cl.getResources(name);
   }
 
   @Override
   public InputStream getResourceAsStream(String name) {
-    lock.lock();
-    try {
-      return this.cl.getResourceAsStream(name);
-    } finally {
-      lock.unlock();
-    }
+    return this.cl.getResourceAsStream(name);
   }
 
   @Override
   public synchronized void setDefaultAssertionStatus(boolean enabled) {
-    lock.lock();
+    lock();
     try {
-      this.cl.setDefaultAssertionStatus(enabled);
+      this.cl.loader.setDefaultAssertionStatus(enabled);
     } finally {
       lock.unlock();
     }
@@ -147,9 +768,9 @@ public class AccumuloReloadingVFSClassLoader extends SecureClassLoader implement
 
   @Override
   public synchronized void setPackageAssertionStatus(String packageName, boolean enabled) {
-    lock.lock();
+    lock();
     try {
-      this.cl.setPackageAssertionStatus(packageName, enabled);
+      this.cl.loader.setPackageAssertionStatus(packageName, enabled);
     } finally {
       lock.unlock();
     }
@@ -157,9 +778,9 @@ public class AccumuloReloadingVFSClassLoader extends SecureClassLoader implement
 
   @Override
   public synchronized void setClassAssertionStatus(String className, boolean enabled) {
-    lock.lock();
+    lock();
     try {
-      this.cl.setClassAssertionStatus(className, enabled);
+      this.cl.loader.setClassAssertionStatus(className, enabled);
     } finally {
       lock.unlock();
     }
@@ -167,9 +788,9 @@ public class AccumuloReloadingVFSClassLoader extends SecureClassLoader implement
 
   @Override
   public synchronized void clearAssertionStatus() {
-    lock.lock();
+    lock();
     try {
-      this.cl.clearAssertionStatus();
+      this.cl.loader.clearAssertionStatus();
     } finally {
       lock.unlock();
     }
@@ -9,17 +9,37 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.vfs2.CacheStrategy;
 import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileReplicator;
+import org.apache.commons.vfs2.FileSystemManager;
+import org.apache.commons.vfs2.FileSystemOptions;
 import org.apache.commons.vfs2.cache.DefaultFilesCache;
 import org.apache.commons.vfs2.cache.SoftRefFilesCache;
 import org.apache.commons.vfs2.impl.DefaultFileReplicator;
 import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
 import org.apache.commons.vfs2.impl.FileContentInfoFilenameFactory;
+import org.apache.commons.vfs2.provider.CachingHdfsFileReplicator;
+import org.apache.commons.vfs2.provider.HdfsFileSystemConfigBuilder;
+import org.apache.commons.vfs2.provider.HdfsJarFileProvider;
 import org.apache.commons.vfs2.provider.ReadOnlyHdfsFileProvider;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.log4j.Logger;
@@ -43,6 +63,35 @@ import org.apache.log4j.Logger;
  * classloader.context.names -> name1, name2, name3
  * <name>.context.classpath -> list of URIs for this context
  * 
+ * Optional properties
+ * 
+ * classloader.context.monitor -> how classpath changes are detected, polling (default) or modification-time
+ * classloader.context.monitor.marker -> marker file checked by the modification-time monitor in place of the directory
+ * classloader.context.monitor.threads -> number of threads checking the classpaths of all contexts
+ * classloader.context.init.threads -> number of threads resolving classpaths and building context classloaders at startup
+ * classloader.context.reload.threads -> number of threads rebuilding the classloaders of all contexts after their classpaths change
+ * classloader.context.prewarm -> true to load the classes in use into the new classloader of a context before it replaces the current one on reload
+ * classloader.context.prewarm.classes -> class names also loaded into the new classloader of every context on reload
+ * classloader.context.lazy -> true to build the classloader of a context the first time it is used instead of at startup
+ * classloader.context.idle.timeout -> milliseconds after which the classloader of an unused context is closed, it is built again when used
+ * classloader.context.max.loaded -> most contexts, besides the default, whose classloaders are kept built, least recently used are closed first
+ * classloader.context.max.classes -> most classes defined by the classloaders of all contexts
+ * classloader.context.max.jar.bytes -> most bytes of jars in the classpaths of all built contexts
+ * classloader.context.monitor.checks.per.second -> cap on the rate of classpath checks across all contexts
+ * <name>.context.reload.interval -> milliseconds between checks of this context's classpath, use default for the default context
+ * <name>.context.reload.max.interval -> if larger than the interval, checks back off up to this many milliseconds while the classpath is unchanged
+ * classloader.hdfs.status.cache.ttl -> milliseconds to reuse the status of an HDFS file before asking the NameNode again
+ * classloader.hdfs.read.ahead.size -> bytes read ahead of small random reads from HDFS, 0 to disable
+ * classloader.hdfs.short.circuit -> true to read blocks of HDFS jars stored on the local DataNode straight from its disks
+ * classloader.hdfs.short.circuit.skip.checksum -> true to skip verifying checksums on short-circuit reads
+ * classloader.hdfs.jar.direct -> true to read jars in HDFS in place instead of copying them to local disk
+ * classloader.jar.cache.dir -> local directory that keeps copies of HDFS jars across reloads and restarts
+ * classloader.jar.cache.max.size -> most bytes kept in the jar cache directory, least recently used jars are deleted first
+ * 
+ * The class loading metrics of every context are registered with the platform MBean server as
+ * org.apache.accumulo.start:type=ClassLoaderMetrics,context=<name>, see {@link ClassLoaderMetricsMBean}. Contexts added after startup are
+ * registered as they are added and unregistered when they are removed.
+ * 
  */
 public class AccumuloVFSClassLoader {
 
@@ -54,12 +103,69 @@ public class AccumuloVFSClassLoader {
   
   public static final String CONTEXT_CLASSPATH_PROPERTY = ".context.classpath";
   
+  public static final String CONTEXT_RELOAD_INTERVAL_PROPERTY = ".context.reload.interval";
+  
+  public static final String CONTEXT_RELOAD_MAX_INTERVAL_PROPERTY = ".context.reload.max.interval";
+  
+  public static final String DEFAULT_CONTEXT_PREFIX = "default";
+  
+  public static final String MONITOR_PROPERTY = "classloader.context.monitor";
+  
+  public static final String MONITOR_MARKER_PROPERTY = "classloader.context.monitor.marker";
+  
+  public static final String MONITOR_THREADS_PROPERTY = "classloader.context.monitor.threads";
+  
+  public static final String MONITOR_RATE_PROPERTY = "classloader.context.monitor.checks.per.second";
+  
+  public static final String CONTEXT_INIT_THREADS_PROPERTY = "classloader.context.init.threads";
+  
+  public static final int DEFAULT_CONTEXT_INIT_THREADS = 8;
+  
+  private static final long INIT_SHUTDOWN_WAIT = 60 * 1000;
+  
+  public static final String CONTEXT_RELOAD_THREADS_PROPERTY = "classloader.context.reload.threads";
+  
+  public static final String CONTEXT_PREWARM_PROPERTY = "classloader.context.prewarm";
+  
+  public static final String CONTEXT_PREWARM_CLASSES_PROPERTY = "classloader.context.prewarm.classes";
+  
+  public static final String CONTEXT_LAZY_PROPERTY = "classloader.context.lazy";
+  
+  public static final String CONTEXT_IDLE_TIMEOUT_PROPERTY = "classloader.context.idle.timeout";
+  
+  public static final String CONTEXT_MAX_LOADED_PROPERTY = "classloader.context.max.loaded";
+  
+  public static final String CONTEXT_MAX_CLASSES_PROPERTY = "classloader.context.max.classes";
+  
+  public static final String CONTEXT_MAX_JAR_BYTES_PROPERTY = "classloader.context.max.jar.bytes";
+  
+  public static final String HDFS_STATUS_CACHE_TTL_PROPERTY = "classloader.hdfs.status.cache.ttl";
+  
+  public static final String HDFS_READ_AHEAD_SIZE_PROPERTY = "classloader.hdfs.read.ahead.size";
+  
+  public static final String HDFS_SHORT_CIRCUIT_PROPERTY = "classloader.hdfs.short.circuit";
+  
+  public static final String HDFS_SHORT_CIRCUIT_SKIP_CHECKSUM_PROPERTY = "classloader.hdfs.short.circuit.skip.checksum";
+  
+  public static final String HDFS_JAR_DIRECT_PROPERTY = "classloader.hdfs.jar.direct";
+  
+  public static final String JAR_CACHE_DIR_PROPERTY = "classloader.jar.cache.dir";
+  
+  public static final String JAR_CACHE_MAX_SIZE_PROPERTY = "classloader.jar.cache.max.size";
+  
+  public static final String METRICS_DOMAIN = "org.apache.accumulo.start";
+  
+  public static final String POLLING_MONITOR = "polling";
+  
+  public static final String MODIFICATION_TIME_MONITOR = "modification-time";
+  
   //TODO: Need to get this from the config
   public static final String DEFAULT_CLASSPATH = "hdfs://localhost:8020/accumulo/classpath";
   
   private static DefaultFileSystemManager vfs = null;
   private static ClassLoader parent = null;
   private static volatile AccumuloContextClassLoader loader = null;
+  private static ClasspathMonitorScheduler scheduler = null;
   private static final Object lock = new Object();
   private static final Configuration ACC_CONF = new Configuration();;  
   private static final String SITE_CONF;
@@ -182,6 +288,187 @@ public class AccumuloVFSClassLoader {
     return aClassLoader;
   }
 
+  private static ClasspathMonitorScheduler createScheduler() {
+    return new ClasspathMonitorScheduler(ACC_CONF.getInt(MONITOR_THREADS_PROPERTY, ClasspathMonitorScheduler.DEFAULT_THREADS),
+        ACC_CONF.getInt(MONITOR_RATE_PROPERTY, 0));
+  }
+  
+  private static ClasspathChangeDetector createMonitor(ClasspathMonitorScheduler scheduler) {
+    String type = ACC_CONF.get(MONITOR_PROPERTY, POLLING_MONITOR);
+    if (MODIFICATION_TIME_MONITOR.equals(type))
+      return new ModificationTimeChangeDetector(scheduler, ModificationTimeChangeDetector.DEFAULT_DELAY, ACC_CONF.get(MONITOR_MARKER_PROPERTY));
+    if (!POLLING_MONITOR.equals(type))
+      log.warn("Unknown value " + type + " for " + MONITOR_PROPERTY + ", using " + POLLING_MONITOR);
+    return new FullScanChangeDetector(scheduler, FullScanChangeDetector.DEFAULT_DELAY);
+  }
+  
+  /**
+   * @return a replicator that caches HDFS jars if a cache directory is configured
+   */
+  private static FileReplicator createReplicator() {
+    String dir = ACC_CONF.get(JAR_CACHE_DIR_PROPERTY);
+    if (null == dir)
+      return new DefaultFileReplicator();
+    return new CachingHdfsFileReplicator(new File(dir), ACC_CONF.getLong(JAR_CACHE_MAX_SIZE_PROPERTY, CachingHdfsFileReplicator.DEFAULT_MAX_SIZE));
+  }
+  
+  /**
+   * @return options used to resolve classpath entries
+   */
+  private static FileSystemOptions getFileSystemOptions() {
+    FileSystemOptions opts = new FileSystemOptions();
+    HdfsFileSystemConfigBuilder.getInstance().setStatusCacheTtl(opts, ACC_CONF.getLong(HDFS_STATUS_CACHE_TTL_PROPERTY, 0));
+    HdfsFileSystemConfigBuilder.getInstance().setReadAheadSize(opts,
+        ACC_CONF.getInt(HDFS_READ_AHEAD_SIZE_PROPERTY, HdfsFileSystemConfigBuilder.DEFAULT_READ_AHEAD_SIZE));
+    // left unset, the DFS client uses its default
+    if (null != ACC_CONF.get(HDFS_SHORT_CIRCUIT_PROPERTY))
+      HdfsFileSystemConfigBuilder.getInstance().setShortCircuitRead(opts, ACC_CONF.getBoolean(HDFS_SHORT_CIRCUIT_PROPERTY, false));
+    if (null != ACC_CONF.get(HDFS_SHORT_CIRCUIT_SKIP_CHECKSUM_PROPERTY))
+      HdfsFileSystemConfigBuilder.getInstance().setShortCircuitSkipChecksum(opts, ACC_CONF.getBoolean(HDFS_SHORT_CIRCUIT_SKIP_CHECKSUM_PROPERTY, false));
+    return opts;
+  }
+  
+  private static ExecutorService createInitPool(Configuration conf, int tasks) {
+    final AtomicInteger count = new AtomicInteger(0);
+    return Executors.newFixedThreadPool(Math.max(1, Math.min(tasks, conf.getInt(CONTEXT_INIT_THREADS_PROPERTY, DEFAULT_CONTEXT_INIT_THREADS))),
+        new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Context init " + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+          }
+        });
+  }
+  
+  /**
+   * @param failed
+   *          set once building any context failed, tasks that have not started yet then build nothing and return null
+   * @return a task that resolves the classpath of a context and builds its classloader
+   */
+  private static Callable<AccumuloReloadingVFSClassLoader> buildContext(final Configuration conf, final FileSystemManager vfs, final ClassLoader parent,
+      final String context, final String[] paths, final FileSystemOptions opts, final ClasspathChangeDetector monitor, final AtomicBoolean failed) {
+    return new Callable<AccumuloReloadingVFSClassLoader>() {
+      public AccumuloReloadingVFSClassLoader call() throws Exception {
+        if (failed.get())
+          return null;
+        FileObject[] classPath = new FileObject[paths.length];
+        for (int i = 0; i < paths.length; i++)
+          classPath[i] = vfs.resolveFile(paths[i], opts);
+        log.debug("Creating Context ClassLoader for context: " + context + " using paths: " + Arrays.toString(paths));
+        return new AccumuloReloadingVFSClassLoader(classPath, vfs, parent, monitor, conf.getLong(context + CONTEXT_RELOAD_INTERVAL_PROPERTY, 0),
+            conf.getLong(context + CONTEXT_RELOAD_MAX_INTERVAL_PROPERTY, 0));
+      }
+    };
+  }
+  
+  private static <T> T get(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      throw new IOException("Interrupted while creating context classloaders", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      throw new IOException("Error creating context classloader", e.getCause());
+    }
+  }
+  
+  /**
+   * Close the classloaders that were built before creating the contexts failed. Builds that are still running are waited for, without interrupting them
+   * since they may be using a DFS client shared with other classloaders, so that what they build is closed too.
+   */
+  private static void closeBuilt(ExecutorService pool, Collection<Future<AccumuloReloadingVFSClassLoader>> futures) {
+    pool.shutdown();
+    try {
+      if (!pool.awaitTermination(INIT_SHUTDOWN_WAIT, TimeUnit.MILLISECONDS))
+        log.warn("Context classloaders still being built " + INIT_SHUTDOWN_WAIT + "ms after creating the contexts failed, they will not be closed");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (Future<AccumuloReloadingVFSClassLoader> future : futures) {
+      if (null == future || !future.isDone())
+        continue;
+      try {
+        AccumuloReloadingVFSClassLoader built = future.get();
+        if (null != built)
+          built.close();
+      } catch (Exception e) {
+        // nothing was built
+      }
+    }
+  }
+  
+  /**
+   * @return the classpaths of the named contexts that have one, in the order they are named
+   */
+  private static Map<String,String[]> getContexts(Configuration conf) {
+    Map<String,String[]> contexts = new LinkedHashMap<String,String[]>();
+    String[] contextNames = conf.getStrings(CONTEXT_NAMES_PROPERTY);
+    if (null != contextNames) {
+      for (String context : contextNames) {
+        String[] contextPaths = conf.getStrings(context + CONTEXT_CLASSPATH_PROPERTY);
+        if (null != contextPaths)
+          contexts.put(context, contextPaths);
+      }
+    }
+    return contexts;
+  }
+  
+  /**
+   * Build the context classloader described by a configuration. The classpaths of all contexts are resolved and their classloaders built in parallel,
+   * lazy contexts are only registered. If building any context fails, the classloaders already built are closed and nothing is left scheduled.
+   * The scheduler belongs to the caller and is not closed.
+   */
+  static AccumuloContextClassLoader createContextLoader(Configuration conf, FileSystemManager vfs, ClassLoader parent, FileSystemOptions opts,
+      ClasspathMonitorScheduler scheduler, ClasspathChangeDetector monitor) throws IOException {
+    Map<String,String[]> contexts = getContexts(conf);
+    boolean lazy = conf.getBoolean(CONTEXT_LAZY_PROPERTY, false);
+    ExecutorService pool = createInitPool(conf, lazy ? 1 : contexts.size() + 1);
+    AtomicBoolean failed = new AtomicBoolean(false);
+    Future<AccumuloReloadingVFSClassLoader> defaultLoader = null;
+    Map<String,Future<AccumuloReloadingVFSClassLoader>> contextLoaders = new LinkedHashMap<String,Future<AccumuloReloadingVFSClassLoader>>();
+    AccumuloContextClassLoader contextLoader = null;
+    try {
+      defaultLoader = pool.submit(buildContext(conf, vfs, parent, DEFAULT_CONTEXT_PREFIX, conf.getStrings(DEFAULT_CLASSPATH_PROPERTY, DEFAULT_CLASSPATH), opts,
+          monitor, failed));
+      if (!lazy) {
+        for (Entry<String,String[]> entry : contexts.entrySet())
+          contextLoaders.put(entry.getKey(), pool.submit(buildContext(conf, vfs, parent, entry.getKey(), entry.getValue(), opts, monitor, failed)));
+      }
+      
+      //Create the Accumulo Context ClassLoader using the DEFAULT_CONTEXT and add the other contexts
+      contextLoader = new AccumuloContextClassLoader(get(defaultLoader), vfs, parent, monitor);
+      contextLoader.setScheduler(scheduler);
+      contextLoader.setIdleTimeout(conf.getLong(CONTEXT_IDLE_TIMEOUT_PROPERTY, 0));
+      contextLoader.setMaxLoadedContexts(conf.getInt(CONTEXT_MAX_LOADED_PROPERTY, 0));
+      contextLoader.setMaxDefinedClasses(conf.getLong(CONTEXT_MAX_CLASSES_PROPERTY, 0));
+      contextLoader.setMaxArchiveBytes(conf.getLong(CONTEXT_MAX_JAR_BYTES_PROPERTY, 0));
+      for (Entry<String,String[]> entry : contexts.entrySet()) {
+        String context = entry.getKey();
+        long interval = conf.getLong(context + CONTEXT_RELOAD_INTERVAL_PROPERTY, 0);
+        long maxInterval = conf.getLong(context + CONTEXT_RELOAD_MAX_INTERVAL_PROPERTY, 0);
+        if (lazy)
+          contextLoader.registerContext(context, entry.getValue(), opts, interval, maxInterval);
+        else
+          contextLoader.addContext(context, get(contextLoaders.get(context)), interval, maxInterval);
+      }
+      contextLoader.setPrewarm(conf.getBoolean(CONTEXT_PREWARM_PROPERTY, false));
+      contextLoader.setPrewarmClasses(conf.getStringCollection(CONTEXT_PREWARM_CLASSES_PROPERTY));
+      return contextLoader;
+    } catch (IOException e) {
+      failed.set(true);
+      // stops the idle sweep and closes the contexts added so far
+      if (null != contextLoader)
+        contextLoader.close();
+      List<Future<AccumuloReloadingVFSClassLoader>> built = new ArrayList<Future<AccumuloReloadingVFSClassLoader>>(contextLoaders.values());
+      built.add(defaultLoader);
+      closeBuilt(pool, built);
+      throw e;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+  
   public synchronized static <U> Class<? extends U> loadClass(String classname, Class<U> extension) throws ClassNotFoundException {
     try {
       return (Class<? extends U>) Class.forName(classname, true, getClassLoader()).asSubclass(extension);
@@ -209,14 +496,17 @@ public class AccumuloVFSClassLoader {
             vfs.addProvider("gz", new org.apache.commons.vfs2.provider.gzip.GzipFileProvider());
             vfs.addProvider("ram", new org.apache.commons.vfs2.provider.ram.RamFileProvider());
             vfs.addProvider("file", new org.apache.commons.vfs2.provider.local.DefaultLocalFileProvider());
-            vfs.addProvider("jar", new org.apache.commons.vfs2.provider.jar.JarFileProvider());
+            if (ACC_CONF.getBoolean(HDFS_JAR_DIRECT_PROPERTY, false))
+              vfs.addProvider("jar", new HdfsJarFileProvider());
+            else
+              vfs.addProvider("jar", new org.apache.commons.vfs2.provider.jar.JarFileProvider());
             vfs.addProvider("http", new org.apache.commons.vfs2.provider.http.HttpFileProvider());
             vfs.addProvider("https", new org.apache.commons.vfs2.provider.https.HttpsFileProvider());
             vfs.addProvider("hdfs", new ReadOnlyHdfsFileProvider());
             vfs.addExtensionMap("jar", "jar");
             vfs.setFileContentInfoFactory(new FileContentInfoFilenameFactory());
             vfs.setFilesCache(new SoftRefFilesCache());
-            vfs.setReplicator(new DefaultFileReplicator());
+            vfs.setReplicator(createReplicator());
             vfs.setCacheStrategy(CacheStrategy.ON_RESOLVE);
           }
                     
@@ -224,34 +514,22 @@ public class AccumuloVFSClassLoader {
           if (null == parent)
             parent = getAccumuloClassLoader();
           
-          //Get the context names and classpaths from the configuration
-          String[] defaultPaths = ACC_CONF.getStrings(DEFAULT_CLASSPATH_PROPERTY, DEFAULT_CLASSPATH);
-          FileObject[] defaultClassPath = new FileObject[defaultPaths.length];
-          int i = 0;
-          for (String path : defaultPaths) {
-            FileObject fo = vfs.resolveFile(path);
-            defaultClassPath[i++] = fo;
-          }
+          AccumuloReloadingVFSClassLoader.setReloadThreads(ACC_CONF.getInt(CONTEXT_RELOAD_THREADS_PROPERTY,
+              AccumuloReloadingVFSClassLoader.DEFAULT_RELOAD_THREADS));
           
-          //Create the Accumulo Context ClassLoader using the DEFAULT_CONTEXT
-          loader = new AccumuloContextClassLoader(defaultClassPath, vfs, parent);
-
-          //Add the other contexts
-          String[] contexts = ACC_CONF.getStrings(CONTEXT_NAMES_PROPERTY);
-          if (null != contexts) {
-            for (String context : contexts) {
-              String[] contextPaths = ACC_CONF.getStrings(context + CONTEXT_CLASSPATH_PROPERTY);
-              if (null != contextPaths) {
-                FileObject[] contextClassPath = new FileObject[contextPaths.length];
-                for (String cp : contextPaths) {
-                  FileObject fo = vfs.resolveFile(cp);
-                  contextClassPath[i++] = fo;
-                }
-                log.debug("Creating Context ClassLoader for context: " + context + " using paths: " + contextClassPath.toString());
-                loader.addContext(context, contextClassPath);
-              }
+          if (null == scheduler)
+            scheduler = createScheduler();
+          AccumuloContextClassLoader contextLoader = null;
+          try {
+            contextLoader = createContextLoader(ACC_CONF, vfs, parent, getFileSystemOptions(), scheduler, createMonitor(scheduler));
+          } finally {
+            if (null == contextLoader) {
+              scheduler.close();
+              scheduler = null;
             }
           }
+          contextLoader.setMetricsDomain(METRICS_DOMAIN);
+          loader = contextLoader;
         }
       }
       localLoader = loader;
@@ -261,6 +539,12 @@ public class AccumuloVFSClassLoader {
   
   //TODO: Need to put this in a shutdown hook
   public static void close() {
+    synchronized (lock) {
+      if (null != scheduler) {
+        scheduler.close();
+        scheduler = null;
+      }
+    }
     if (null != vfs)
       vfs.close();
   }
@@ -0,0 +1,41 @@
+package org.apache.accumulo.start.classloader;
+
+import org.apache.commons.vfs2.FileSystem;
+import org.apache.commons.vfs2.FileSystemConfigBuilder;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.provider.AbstractFileSystem;
+
+/**
+ * Tags file system options with the classloader generation an archive is opened for. File
+ * systems, including the layered file systems of archives, are cached by name and options, so a
+ * classpath file resolved with tagged options gets file systems of its own. An archive opened from
+ * it reads the file as it is now, while the file systems opened for earlier generations stay open
+ * for the classloaders still using them.
+ */
+class ArchiveGenerationConfigBuilder extends FileSystemConfigBuilder {
+
+  private static final ArchiveGenerationConfigBuilder BUILDER = new ArchiveGenerationConfigBuilder();
+
+  private static final String GENERATION = ArchiveGenerationConfigBuilder.class.getName() + ".GENERATION";
+
+  static ArchiveGenerationConfigBuilder getInstance() {
+    return BUILDER;
+  }
+
+  /**
+   * @param opts
+   *          options of the classpath file, may be null, they are not modified
+   * @return a copy of the options tagged with the generation
+   */
+  FileSystemOptions withGeneration(FileSystemOptions opts, long generation) {
+    FileSystemOptions tagged = null == opts ? new FileSystemOptions() : (FileSystemOptions) opts.clone();
+    setParam(tagged, GENERATION, Long.valueOf(generation));
+    return tagged;
+  }
+
+  @Override
+  protected Class<? extends FileSystem> getConfigClass() {
+    return AbstractFileSystem.class;
+  }
+
+}
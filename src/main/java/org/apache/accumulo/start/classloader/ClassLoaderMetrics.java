@@ -0,0 +1,100 @@
+package org.apache.accumulo.start.classloader;
+
+/**
+ * Counters and latency histograms of the classloaders of one context. They are kept across the
+ * classloaders built for the context, and recording never takes a lock, so they are always on.
+ */
+public class ClassLoaderMetrics implements ClassLoaderMetricsMBean {
+
+  private final StripedCounter hits = new StripedCounter();
+  private final LatencyHistogram lookups = new LatencyHistogram();
+  private final LatencyHistogram reloads = new LatencyHistogram();
+  private final StripedCounter bytesReplicated = new StripedCounter();
+  private final LatencyHistogram polls = new LatencyHistogram();
+  private final LatencyHistogram lockWaits = new LatencyHistogram();
+
+  void hit() {
+    hits.increment();
+  }
+
+  /**
+   * @param nanos
+   *          time spent searching the classpath
+   */
+  void miss(long nanos) {
+    lookups.record(nanos);
+  }
+
+  void reloaded(long nanos) {
+    reloads.record(nanos);
+  }
+
+  void replicated(long bytes) {
+    bytesReplicated.add(bytes);
+  }
+
+  void polled(long nanos) {
+    polls.record(nanos);
+  }
+
+  void locked(long waitNanos) {
+    lockWaits.record(waitNanos);
+  }
+
+  public long getLoadClassHits() {
+    return hits.get();
+  }
+
+  public long getLoadClassMisses() {
+    return lookups.getCount();
+  }
+
+  public long getLookupTimeMean() {
+    return lookups.getMean();
+  }
+
+  public long getLookupTime99thPercentile() {
+    return lookups.getPercentile(99);
+  }
+
+  public long getReloads() {
+    return reloads.getCount();
+  }
+
+  public long getReloadTimeMean() {
+    return reloads.getMean();
+  }
+
+  public long getReloadTimeMax() {
+    return reloads.getPercentile(100);
+  }
+
+  public long getBytesReplicated() {
+    return bytesReplicated.get();
+  }
+
+  public long getPolls() {
+    return polls.getCount();
+  }
+
+  public long getPollTimeMean() {
+    return polls.getMean();
+  }
+
+  public long getPollTime99thPercentile() {
+    return polls.getPercentile(99);
+  }
+
+  public long getLockAcquisitions() {
+    return lockWaits.getCount();
+  }
+
+  public long getLockWaitTimeMean() {
+    return lockWaits.getMean();
+  }
+
+  public long getLockWaitTime99thPercentile() {
+    return lockWaits.getPercentile(99);
+  }
+
+}
@@ -0,0 +1,55 @@
+package org.apache.accumulo.start.classloader;
+
+/**
+ * Class loading metrics of one context, as registered with JMX by {@link AccumuloVFSClassLoader}. Durations are in nanoseconds, percentiles are
+ * accurate to within a factor of two.
+ */
+public interface ClassLoaderMetricsMBean {
+
+  /**
+   * @return class lookups answered from the cache of classes found and not found
+   */
+  public long getLoadClassHits();
+
+  /**
+   * @return class lookups that searched the classpath
+   */
+  public long getLoadClassMisses();
+
+  public long getLookupTimeMean();
+
+  public long getLookupTime99thPercentile();
+
+  /**
+   * @return times the classpath changed and the classloader was recreated
+   */
+  public long getReloads();
+
+  public long getReloadTimeMean();
+
+  public long getReloadTimeMax();
+
+  /**
+   * @return bytes of HDFS jars copied to local disk
+   */
+  public long getBytesReplicated();
+
+  /**
+   * @return checks of the classpath for changes
+   */
+  public long getPolls();
+
+  public long getPollTimeMean();
+
+  public long getPollTime99thPercentile();
+
+  /**
+   * @return times the classloader's lock was taken
+   */
+  public long getLockAcquisitions();
+
+  public long getLockWaitTimeMean();
+
+  public long getLockWaitTime99thPercentile();
+
+}
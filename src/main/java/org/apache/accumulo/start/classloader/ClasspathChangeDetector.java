@@ -0,0 +1,44 @@
+package org.apache.accumulo.start.classloader;
+
+import org.apache.commons.vfs2.FileListener;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+
+/**
+ * Strategy used by {@link AccumuloReloadingVFSClassLoader} to find out that files in its classpath
+ * were created, changed or deleted.
+ */
+public interface ClasspathChangeDetector {
+
+  /**
+   * Listeners that also implement this interface are told how long each check of their files took, by detectors that check the files of each listener
+   * separately
+   */
+  public static interface PollListener {
+    public void polled(long nanos);
+  }
+
+  /**
+   * Start watching files and directories, notifying the listener of every change found
+   *
+   * @param files
+   *          files and directories to watch, directories are watched recursively
+   * @param listener
+   *          listener to notify, replaces any previous watch for the same listener
+   * @param interval
+   *          milliseconds between checks, zero or less to use the detector's default
+   * @param maxInterval
+   *          when larger than the interval, the time between checks grows up to this many
+   *          milliseconds while no changes are found, if the detector supports it
+   * @throws FileSystemException
+   */
+  public void watch(FileObject[] files, FileListener listener, long interval, long maxInterval) throws FileSystemException;
+
+  /**
+   * Stop watching the files registered for the listener
+   *
+   * @param listener
+   */
+  public void unwatch(FileListener listener);
+
+}
@@ -0,0 +1,116 @@
+package org.apache.accumulo.start.classloader;
+
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of daemon threads that runs the classpath checks of every context. The number of
+ * threads does not depend on the number of contexts, and the first check of every watch is delayed
+ * by a random part of its interval so that contexts do not all check their files at the same time.
+ * 
+ * Optionally the rate at which checks start can be capped. A check that is due when the cap has
+ * been reached waits on its thread for the next free slot, so the load on the file system stays
+ * flat as contexts are added and each context is simply checked less often. Slots are only taken
+ * by checks that are due, so a check scheduled far ahead does not hold back the ones due before it.
+ */
+public class ClasspathMonitorScheduler {
+
+  public static final int DEFAULT_THREADS = 2;
+
+  private static ClasspathMonitorScheduler instance = null;
+
+  private final ScheduledThreadPoolExecutor executor;
+  private final Random random = new Random();
+  private final long gap;
+  private long nextSlot = System.nanoTime();
+
+  public ClasspathMonitorScheduler(int threads) {
+    this(threads, 0);
+  }
+
+  /**
+   * @param threads
+   *          number of threads running checks
+   * @param maxChecksPerSecond
+   *          most checks to start per second, zero or less for no limit
+   */
+  public ClasspathMonitorScheduler(int threads, int maxChecksPerSecond) {
+    this.gap = maxChecksPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / maxChecksPerSecond : 0;
+    final AtomicInteger count = new AtomicInteger(0);
+    executor = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "Classpath monitor " + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * @return scheduler shared by all change detectors that are not given one
+   */
+  public static synchronized ClasspathMonitorScheduler getInstance() {
+    if (null == instance)
+      instance = new ClasspathMonitorScheduler(DEFAULT_THREADS);
+    return instance;
+  }
+
+  /**
+   * Run a task once after a delay
+   */
+  public ScheduledFuture<?> schedule(final Runnable task, long delay) {
+    Runnable run = task;
+    if (gap > 0) {
+      run = new Runnable() {
+        public void run() {
+          try {
+            throttle();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+          task.run();
+        }
+      };
+    }
+    return executor.schedule(run, delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Take the next start slot, waiting for it if the cap has been reached
+   */
+  private void throttle() throws InterruptedException {
+    long wait;
+    synchronized (this) {
+      long now = System.nanoTime();
+      long start = nextSlot - now > 0 ? nextSlot : now;
+      nextSlot = start + gap;
+      wait = start - now;
+    }
+    if (wait > 0)
+      TimeUnit.NANOSECONDS.sleep(wait);
+  }
+
+  /**
+   * Run a task once after a random delay between zero and the interval
+   */
+  public ScheduledFuture<?> scheduleWithJitter(Runnable task, long interval) {
+    long delay = 0;
+    synchronized (random) {
+      delay = (long) (random.nextDouble() * interval);
+    }
+    return schedule(task, delay);
+  }
+
+  /**
+   * Stop all threads, pending checks are dropped
+   */
+  public void close() {
+    executor.shutdownNow();
+  }
+
+}
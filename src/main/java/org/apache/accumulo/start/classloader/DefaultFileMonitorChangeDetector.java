@@ -0,0 +1,56 @@
+package org.apache.accumulo.start.classloader;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.vfs2.FileListener;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.impl.DefaultFileMonitor;
+
+/**
+ * Change detector that starts a DefaultFileMonitor thread for every watch. Every file and directory
+ * is checked on every poll. {@link FullScanChangeDetector} does the same checks without a thread per
+ * watch.
+ */
+public class DefaultFileMonitorChangeDetector implements ClasspathChangeDetector {
+
+  public static final long DEFAULT_DELAY = 2000;
+
+  private final Map<FileListener,DefaultFileMonitor> monitors = new ConcurrentHashMap<FileListener,DefaultFileMonitor>();
+  private final long delay;
+
+  public DefaultFileMonitorChangeDetector() {
+    this(DEFAULT_DELAY);
+  }
+
+  /**
+   * @param delay
+   *          milliseconds to wait between polls
+   */
+  public DefaultFileMonitorChangeDetector(long delay) {
+    this.delay = delay;
+  }
+
+  /**
+   * DefaultFileMonitor polls at a fixed delay, so the maximum interval is ignored
+   */
+  public void watch(FileObject[] files, FileListener listener, long interval, long maxInterval) throws FileSystemException {
+    DefaultFileMonitor monitor = new DefaultFileMonitor(listener);
+    monitor.setDelay(interval > 0 ? interval : delay);
+    monitor.setRecursive(true);
+    for (FileObject file : files)
+      monitor.addFile(file);
+    monitor.start();
+    DefaultFileMonitor previous = monitors.put(listener, monitor);
+    if (null != previous)
+      previous.stop();
+  }
+
+  public void unwatch(FileListener listener) {
+    DefaultFileMonitor monitor = monitors.remove(listener);
+    if (null != monitor)
+      monitor.stop();
+  }
+
+}
@@ -0,0 +1,26 @@
+package org.apache.accumulo.start.classloader;
+
+/**
+ * Change detector that compares every file and directory on every check, like DefaultFileMonitor
+ * does, but runs the checks of all watches on a shared {@link ClasspathMonitorScheduler} instead of
+ * starting a thread per watch.
+ */
+public class FullScanChangeDetector extends ModificationTimeChangeDetector {
+
+  public static final long DEFAULT_DELAY = 2000;
+
+  public FullScanChangeDetector() {
+    this(ClasspathMonitorScheduler.getInstance(), DEFAULT_DELAY);
+  }
+
+  /**
+   * @param scheduler
+   *          runs the checks of all watches
+   * @param delay
+   *          default milliseconds to wait between checks of a watch
+   */
+  public FullScanChangeDetector(ClasspathMonitorScheduler scheduler, long delay) {
+    super(scheduler, delay, null, true);
+  }
+
+}
@@ -0,0 +1,257 @@
+package org.apache.accumulo.start.classloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.CodeSource;
+import java.security.cert.Certificate;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes.Name;
+
+import org.apache.commons.vfs2.FileContent;
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileSystemManager;
+import org.apache.commons.vfs2.FileUtil;
+import org.apache.commons.vfs2.NameScope;
+import org.apache.commons.vfs2.Selectors;
+import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
+import org.apache.commons.vfs2.impl.VFSClassLoader;
+import org.apache.commons.vfs2.provider.CachingHdfsFileReplicator;
+import org.apache.commons.vfs2.provider.HdfsJarFileSystem;
+import org.apache.commons.vfs2.provider.LayeredFileName;
+import org.apache.commons.vfs2.provider.MappedJarFile;
+import org.apache.commons.vfs2.provider.ReadOnlyHdfsFileSystem;
+import org.apache.log4j.Logger;
+
+/**
+ * VFSClassLoader that uses a {@link PackageIndex} to find classes and resources. Instead of probing
+ * every file in the classpath in order, a lookup only opens the archives that contain the package
+ * of the requested class or resource, plus any roots that are not indexed.
+ * 
+ * HDFS archives that have a local copy in a {@link CachingHdfsFileReplicator} are also mapped into
+ * memory with {@link MappedJarFile}, and their classes are defined from the mapping instead of being
+ * read through a VFS input stream. Those copies are never written once they are in place, a changed
+ * jar gets a new copy, so the mapping cannot change under the classloader. Local archives are not
+ * mapped, since a jar overwritten in place would corrupt the mapping or crash the JVM, and neither
+ * are jars read in place by a {@link HdfsJarFileSystem}.
+ */
+public class IndexedVFSClassLoader extends VFSClassLoader {
+
+  private static final Logger log = Logger.getLogger(IndexedVFSClassLoader.class);
+
+  private final PackageIndex index;
+  private final Map<FileObject,MappedJarFile> jars;
+  private final AtomicInteger definedClasses = new AtomicInteger(0);
+  private volatile long archiveBytes = -1;
+
+  /**
+   * @param files
+   *          the classpath, archives that are already opened are used as they are
+   * @param vfs
+   *          file system manager used to open archives
+   * @param parent
+   *          parent classloader, may be null
+   * @param previous
+   *          index of the classloader being replaced, may be null
+   * @param changed
+   *          URIs of the archives that changed since the previous index was built
+   * @throws FileSystemException
+   */
+  public IndexedVFSClassLoader(FileObject[] files, FileSystemManager vfs, ClassLoader parent, IndexedVFSClassLoader previous, Collection<String> changed)
+      throws FileSystemException {
+    super(files, vfs, parent);
+    this.index = PackageIndex.build(getFileObjects(), null == previous ? null : previous.index, changed);
+    this.jars = mapJars(getFileObjects(), vfs, previous, changed);
+  }
+
+  private static String getKey(FileObject root) {
+    FileName name = root.getName();
+    if (!(name instanceof LayeredFileName))
+      return null;
+    return ((LayeredFileName) name).getOuterName().getURI();
+  }
+
+  private static Map<FileObject,MappedJarFile> mapJars(FileObject[] roots, FileSystemManager vfs, IndexedVFSClassLoader previous, Collection<String> changed) {
+    Map<String,MappedJarFile> reusable = new HashMap<String,MappedJarFile>();
+    if (null != previous) {
+      for (Entry<FileObject,MappedJarFile> entry : previous.jars.entrySet()) {
+        String key = getKey(entry.getKey());
+        if (!changed.contains(key))
+          reusable.put(key, entry.getValue());
+      }
+    }
+
+    boolean cachedCopies = false;
+    try {
+      cachedCopies = vfs instanceof DefaultFileSystemManager && ((DefaultFileSystemManager) vfs).getReplicator() instanceof CachingHdfsFileReplicator;
+    } catch (FileSystemException e) {
+      // no replicator
+    }
+
+    Map<FileObject,MappedJarFile> jars = new IdentityHashMap<FileObject,MappedJarFile>();
+    for (FileObject root : roots) {
+      String key = getKey(root);
+      if (null == key)
+        continue;
+      MappedJarFile jar = reusable.get(key);
+      if (null == jar) {
+        try {
+          File local = getLocalFile(root, cachedCopies);
+          if (null != local)
+            jar = new MappedJarFile(local);
+        } catch (IOException e) {
+          log.debug("Unable to map " + key + ", reading it through VFS", e);
+        }
+      }
+      if (null != jar)
+        jars.put(root, jar);
+    }
+    return jars;
+  }
+
+  /**
+   * @return the cached copy of an archive root, or null if it has none that is safe to map
+   */
+  private static File getLocalFile(FileObject root, boolean cachedCopies) throws FileSystemException {
+    FileObject outer = root.getFileSystem().getParentLayer();
+    if (null == outer || root.getFileSystem() instanceof HdfsJarFileSystem)
+      return null;
+    if (cachedCopies && outer.getFileSystem() instanceof ReadOnlyHdfsFileSystem)
+      return outer.getFileSystem().replicateFile(outer, Selectors.SELECT_SELF);
+    return null;
+  }
+
+  private FileObject findFile(String path) throws FileSystemException {
+    for (FileObject root : index.getRoots(path)) {
+      FileObject file = root.resolveFile(path, NameScope.DESCENDENT_OR_SELF);
+      if (file.exists())
+        return file;
+    }
+    return null;
+  }
+
+  @Override
+  protected Class<?> findClass(String name) throws ClassNotFoundException {
+    String path = name.replace('.', '/').concat(".class");
+    for (FileObject root : index.getRoots(path)) {
+      try {
+        MappedJarFile jar = jars.get(root);
+        if (null != jar) {
+          ByteBuffer bytes = jar.getEntry(path);
+          if (null != bytes)
+            return defineClass(name, root, root.resolveFile(path, NameScope.DESCENDENT_OR_SELF), bytes);
+        } else {
+          FileObject file = root.resolveFile(path, NameScope.DESCENDENT_OR_SELF);
+          if (file.exists())
+            return defineClass(name, root, file, null);
+        }
+      } catch (IOException e) {
+        throw new ClassNotFoundException(name, e);
+      }
+    }
+    throw new ClassNotFoundException(name);
+  }
+
+  /**
+   * @param bytes
+   *          the class bytes read from a mapped jar, or null to read them from the file
+   */
+  private Class<?> defineClass(String name, FileObject root, FileObject file, ByteBuffer bytes) throws FileSystemException {
+    URL url = root.getURL();
+    int idx = name.lastIndexOf('.');
+    if (idx > 0) {
+      String pkgName = name.substring(0, idx);
+      if (null == getPackage(pkgName)) {
+        FileObject folder = file.getParent();
+        try {
+          definePackage(pkgName, attribute(folder, Name.SPECIFICATION_TITLE), attribute(folder, Name.SPECIFICATION_VERSION),
+              attribute(folder, Name.SPECIFICATION_VENDOR), attribute(folder, Name.IMPLEMENTATION_TITLE), attribute(folder, Name.IMPLEMENTATION_VERSION),
+              attribute(folder, Name.IMPLEMENTATION_VENDOR), null);
+        } catch (IllegalArgumentException e) {
+          // package was defined by another class in the meantime
+        }
+      }
+    }
+    Certificate[] certs = file.getContent().getCertificates();
+    Class<?> clazz;
+    if (null != bytes) {
+      clazz = defineClass(name, bytes, new CodeSource(url, certs));
+    } else {
+      byte[] content = FileUtil.getContent(file);
+      clazz = defineClass(name, content, 0, content.length, new CodeSource(url, certs));
+    }
+    definedClasses.incrementAndGet();
+    return clazz;
+  }
+
+  /**
+   * @return number of classes defined by this classloader
+   */
+  public int getDefinedClassCount() {
+    return definedClasses.get();
+  }
+
+  /**
+   * @return total size of the archives in the classpath
+   */
+  public long getArchiveBytes() {
+    long bytes = archiveBytes;
+    if (bytes < 0) {
+      bytes = 0;
+      for (FileObject root : getFileObjects()) {
+        try {
+          FileObject outer = root.getFileSystem().getParentLayer();
+          if (null != outer)
+            bytes += outer.getContent().getSize();
+        } catch (FileSystemException e) {
+          log.debug("Unable to get the size of " + root.getName(), e);
+        }
+      }
+      archiveBytes = bytes;
+    }
+    return bytes;
+  }
+
+  private static String attribute(FileObject folder, Name name) {
+    try {
+      FileContent content = folder.getContent();
+      Object value = content.getAttribute(name.toString());
+      return null == value ? null : value.toString();
+    } catch (FileSystemException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return true if the resource is in none of the archives, false if it is in one or they could not
+   *         all be searched
+   */
+  boolean isAbsent(String name) {
+    try {
+      return null == findFile(name);
+    } catch (FileSystemException e) {
+      return false;
+    }
+  }
+
+  @Override
+  protected URL findResource(String name) {
+    try {
+      FileObject file = findFile(name);
+      if (null != file)
+        return file.getURL();
+    } catch (FileSystemException e) {
+      // treat as not found, like VFSClassLoader does
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,83 @@
+package org.apache.accumulo.start.classloader;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in buckets whose bounds are powers of two, bucket i holding durations from 2^i up
+ * to 2^(i+1) nanoseconds. Recording is a few atomic adds on cells that belong to the recording
+ * thread's stripe, as in {@link StripedCounter}. Percentiles are reported as the upper bound of the
+ * bucket they fall in, so they are accurate to within a factor of two.
+ */
+public class LatencyHistogram {
+
+  static final int BUCKETS = 64;
+
+  // each stripe's buckets take 8 cache lines, so stripes do not share cache lines
+  private final AtomicLongArray buckets = new AtomicLongArray(StripedCounter.STRIPES * BUCKETS);
+  private final StripedCounter total = new StripedCounter();
+
+  static int bucket(long nanos) {
+    return nanos <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+  }
+
+  public void record(long nanos) {
+    buckets.incrementAndGet(StripedCounter.stripe() * BUCKETS + bucket(nanos));
+    total.add(Math.max(0, nanos));
+  }
+
+  private long[] snapshot() {
+    long[] counts = new long[BUCKETS];
+    for (int s = 0; s < StripedCounter.STRIPES; s++)
+      for (int i = 0; i < BUCKETS; i++)
+        counts[i] += buckets.get(s * BUCKETS + i);
+    return counts;
+  }
+
+  /**
+   * @return number of durations recorded
+   */
+  public long getCount() {
+    long count = 0;
+    for (long c : snapshot())
+      count += c;
+    return count;
+  }
+
+  /**
+   * @return sum of the durations recorded, in nanoseconds
+   */
+  public long getTotal() {
+    return total.get();
+  }
+
+  /**
+   * @return mean duration in nanoseconds, 0 if none were recorded
+   */
+  public long getMean() {
+    long count = getCount();
+    return count == 0 ? 0 : getTotal() / count;
+  }
+
+  /**
+   * @param percentile
+   *          between 0 and 100
+   * @return upper bound in nanoseconds of the bucket holding the percentile, 0 if no durations were recorded
+   */
+  public long getPercentile(double percentile) {
+    long[] counts = snapshot();
+    long count = 0;
+    for (long c : counts)
+      count += c;
+    if (count == 0)
+      return 0;
+    long rank = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= Math.max(1, rank))
+        return i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+    }
+    return Long.MAX_VALUE;
+  }
+
+}
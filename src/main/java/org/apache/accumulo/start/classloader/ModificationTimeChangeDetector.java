@@ -0,0 +1,313 @@
+package org.apache.accumulo.start.classloader;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+import org.apache.commons.vfs2.FileChangeEvent;
+import org.apache.commons.vfs2.FileListener;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.NameScope;
+import org.apache.commons.vfs2.provider.ReadOnlyHdfsFileSystem;
+import org.apache.log4j.Logger;
+
+/**
+ * Change detector that runs the checks of all watches on a shared {@link ClasspathMonitorScheduler}
+ * and only looks inside a directory when its modification time changed. Creating, deleting or replacing a file updates the modification
+ * time of its directory, so an unchanged classpath directory costs one status call per poll no
+ * matter how many jars it holds.
+ *
+ * If a marker file name is set and a watched directory contains a file with that name, the marker's
+ * modification time is checked instead and the whole directory tree is compared when it changes.
+ * Deployment tools can touch the marker after updating the directory, which also catches changes
+ * that do not update the directory's own modification time.
+ * 
+ * A watch with a maximum interval larger than its interval is adaptive. The time between checks
+ * doubles after every check that finds no change, up to the maximum, and drops back to the
+ * interval as soon as a change is found.
+ */
+public class ModificationTimeChangeDetector implements ClasspathChangeDetector {
+
+  private static final Logger log = Logger.getLogger(ModificationTimeChangeDetector.class);
+
+  public static final long DEFAULT_DELAY = 2000;
+
+  private static enum Change {
+    CREATED, CHANGED, DELETED
+  }
+
+  /**
+   * Last known state of a watched file or directory
+   */
+  private static class Snapshot {
+    private FileObject file;
+    private boolean exists = false;
+    private long modified = -1;
+    private Map<String,Snapshot> children = null;
+
+    private Snapshot(FileObject file) {
+      this.file = file;
+    }
+  }
+
+  /**
+   * The snapshots of the files watched for one listener. Each check schedules the next one. Events
+   * pass through the watch on their way to the listener so it knows whether a check found changes.
+   */
+  private class Watch implements Runnable, FileListener {
+    private final FileListener listener;
+    private final Snapshot[] roots;
+    private final long interval;
+    private final long maxInterval;
+    private long current;
+    private boolean changed = false;
+    private volatile boolean cancelled = false;
+    private volatile ScheduledFuture<?> next = null;
+
+    private Watch(FileListener listener, Snapshot[] roots, long interval, long maxInterval) {
+      this.listener = listener;
+      this.roots = roots;
+      this.interval = interval;
+      this.maxInterval = maxInterval;
+      this.current = interval;
+    }
+
+    public void run() {
+      if (cancelled)
+        return;
+      changed = false;
+      long start = System.nanoTime();
+      for (Snapshot root : roots) {
+        try {
+          update(root, this, fullScan, true);
+        } catch (FileSystemException e) {
+          log.warn("Error checking " + root.file.getName() + " for changes", e);
+        }
+      }
+      if (listener instanceof PollListener)
+        ((PollListener) listener).polled(System.nanoTime() - start);
+      // back off while nothing changes, start over at the base interval after a change
+      if (changed)
+        current = interval;
+      else if (current < maxInterval)
+        current = Math.min(maxInterval, current * 2);
+      if (!cancelled)
+        next = scheduler.schedule(this, current);
+    }
+
+    private void cancel() {
+      cancelled = true;
+      ScheduledFuture<?> future = next;
+      if (null != future)
+        future.cancel(false);
+    }
+
+    public void fileCreated(FileChangeEvent event) throws Exception {
+      changed = true;
+      listener.fileCreated(event);
+    }
+
+    public void fileDeleted(FileChangeEvent event) throws Exception {
+      changed = true;
+      listener.fileDeleted(event);
+    }
+
+    public void fileChanged(FileChangeEvent event) throws Exception {
+      changed = true;
+      listener.fileChanged(event);
+    }
+  }
+
+  private final Map<FileListener,Watch> watches = new ConcurrentHashMap<FileListener,Watch>();
+  private final ClasspathMonitorScheduler scheduler;
+  private final long delay;
+  private final String marker;
+  private final boolean fullScan;
+
+  public ModificationTimeChangeDetector() {
+    this(DEFAULT_DELAY, null);
+  }
+
+  /**
+   * @param delay
+   *          default milliseconds to wait between checks of a watch
+   * @param marker
+   *          name of the marker file to look for in watched directories, may be null
+   */
+  public ModificationTimeChangeDetector(long delay, String marker) {
+    this(ClasspathMonitorScheduler.getInstance(), delay, marker);
+  }
+
+  /**
+   * @param scheduler
+   *          runs the checks of all watches
+   * @param delay
+   *          default milliseconds to wait between checks of a watch
+   * @param marker
+   *          name of the marker file to look for in watched directories, may be null
+   */
+  public ModificationTimeChangeDetector(ClasspathMonitorScheduler scheduler, long delay, String marker) {
+    this(scheduler, delay, marker, false);
+  }
+
+  /**
+   * @param fullScan
+   *          compare every file on every check instead of relying on directory modification times
+   */
+  protected ModificationTimeChangeDetector(ClasspathMonitorScheduler scheduler, long delay, String marker, boolean fullScan) {
+    this.scheduler = scheduler;
+    this.delay = delay;
+    this.marker = marker;
+    this.fullScan = fullScan;
+  }
+
+  public void watch(FileObject[] files, FileListener listener, long interval, long maxInterval) throws FileSystemException {
+    Snapshot[] roots = new Snapshot[files.length];
+    for (int i = 0; i < files.length; i++) {
+      roots[i] = new Snapshot(files[i]);
+      update(roots[i], null, false, true);
+    }
+    if (interval <= 0)
+      interval = delay;
+    Watch watch = new Watch(listener, roots, interval, Math.max(interval, maxInterval));
+    Watch previous = watches.put(listener, watch);
+    if (null != previous)
+      previous.cancel();
+    watch.next = scheduler.scheduleWithJitter(watch, watch.interval);
+  }
+
+  public void unwatch(FileListener listener) {
+    Watch watch = watches.remove(listener);
+    if (null != watch)
+      watch.cancel();
+  }
+
+  /**
+   * Stop checking all watches. The scheduler is left running since it may be shared.
+   */
+  public void close() {
+    for (FileListener listener : watches.keySet())
+      unwatch(listener);
+  }
+
+  /**
+   * @return the marker file in the directory, or null if there is none
+   */
+  private FileObject getMarker(FileObject dir) throws FileSystemException {
+    if (null == marker)
+      return null;
+    FileObject file = dir.resolveFile(marker, NameScope.CHILD);
+    file.refresh();
+    return file.exists() ? file : null;
+  }
+
+  /**
+   * Bring a snapshot up to date
+   *
+   * @param snapshot
+   *          snapshot to update
+   * @param listener
+   *          listener to notify of changes, null while taking the initial snapshot
+   * @param force
+   *          compare the children of a directory even if its modification time did not change
+   * @param refresh
+   *          discard the cached state of the file, false when it was just returned by a listing that carries its status
+   */
+  private void update(Snapshot snapshot, FileListener listener, boolean force, boolean refresh) throws FileSystemException {
+    FileObject file = snapshot.file;
+    if (refresh)
+      file.refresh();
+    if (!file.exists()) {
+      if (snapshot.exists)
+        deleted(snapshot, listener);
+      return;
+    }
+    boolean created = !snapshot.exists;
+    snapshot.exists = true;
+    if (created && null != listener)
+      fire(listener, file, Change.CREATED);
+
+    if (!file.getType().hasChildren()) {
+      long modified = file.getContent().getLastModifiedTime();
+      if (!created && modified != snapshot.modified && null != listener)
+        fire(listener, file, Change.CHANGED);
+      snapshot.modified = modified;
+      return;
+    }
+
+    FileObject markerFile = getMarker(file);
+    long modified = null == markerFile ? file.getContent().getLastModifiedTime() : markerFile.getContent().getLastModifiedTime();
+    if (created || force || modified != snapshot.modified) {
+      snapshot.modified = modified;
+      compareChildren(snapshot, null == listener || created ? null : listener, force || null != markerFile);
+    } else if (null == markerFile && null != snapshot.children) {
+      // the directory did not change, but a subdirectory might have
+      for (Snapshot child : snapshot.children.values()) {
+        if (child.file.getType().hasChildren())
+          update(child, listener, false, true);
+      }
+    }
+  }
+
+  private void compareChildren(Snapshot snapshot, FileListener listener, boolean force) throws FileSystemException {
+    Map<String,Snapshot> previous = null == snapshot.children ? null : new HashMap<String,Snapshot>(snapshot.children);
+    Map<String,Snapshot> current = new HashMap<String,Snapshot>();
+    for (FileObject child : snapshot.file.getChildren()) {
+      String name = child.getName().getBaseName();
+      if (null != marker && marker.equals(name))
+        continue;
+      Snapshot childSnapshot = null == previous ? null : previous.remove(name);
+      // HDFS listings return new file objects carrying the status from the listing, other providers may return cached objects with stale state
+      boolean refresh = !(child.getFileSystem() instanceof ReadOnlyHdfsFileSystem);
+      if (null == childSnapshot) {
+        childSnapshot = new Snapshot(child);
+        update(childSnapshot, null, false, refresh);
+        if (null != listener)
+          fire(listener, child, Change.CREATED);
+      } else {
+        childSnapshot.file = child;
+        update(childSnapshot, listener, force, refresh);
+      }
+      current.put(name, childSnapshot);
+    }
+    if (null != previous) {
+      for (Snapshot gone : previous.values())
+        deleted(gone, listener);
+    }
+    snapshot.children = current;
+  }
+
+  private void deleted(Snapshot snapshot, FileListener listener) {
+    if (null != snapshot.children) {
+      for (Snapshot child : snapshot.children.values())
+        deleted(child, listener);
+    }
+    snapshot.exists = false;
+    snapshot.modified = -1;
+    snapshot.children = null;
+    if (null != listener)
+      fire(listener, snapshot.file, Change.DELETED);
+  }
+
+  private void fire(FileListener listener, FileObject file, Change change) {
+    FileChangeEvent event = new FileChangeEvent(file);
+    try {
+      switch (change) {
+        case CREATED:
+          listener.fileCreated(event);
+          break;
+        case CHANGED:
+          listener.fileChanged(event);
+          break;
+        case DELETED:
+          listener.fileDeleted(event);
+          break;
+      }
+    } catch (Exception e) {
+      log.error("Error notifying listener of " + change + " for " + file.getName(), e);
+    }
+  }
+
+}
@@ -0,0 +1,125 @@
+package org.apache.accumulo.start.classloader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.provider.LayeredFileName;
+
+/**
+ * Index from package directory (for example "org/apache/accumulo/") to the classpath roots that
+ * contain it. Only archive roots (jar and zip files) are indexed, because their entries are already
+ * in memory once the archive is open. Other roots, like directories, are not indexed and are
+ * searched for every package.
+ *
+ * The packages of each archive are kept per archive file, so an index can be rebuilt from a previous
+ * one by re-reading only the archives that changed. The roots to search for each package are worked
+ * out once when the index is built, so a lookup is a single map probe.
+ */
+class PackageIndex {
+
+  private final FileObject[] roots;
+  private final String[] keys;
+  private final Set<String>[] packages;
+  private final Map<String,List<FileObject>> rootsByPackage = new HashMap<String,List<FileObject>>();
+  private final List<FileObject> unindexed = new ArrayList<FileObject>();
+
+  @SuppressWarnings("unchecked")
+  private PackageIndex(FileObject[] roots) {
+    this.roots = roots;
+    this.keys = new String[roots.length];
+    this.packages = new Set[roots.length];
+  }
+
+  /**
+   * Map every package to the roots that may contain it, in search order. Roots that are not indexed
+   * are searched for every package.
+   */
+  private void mapPackages() {
+    for (int i = 0; i < roots.length; i++) {
+      if (null == packages[i]) {
+        unindexed.add(roots[i]);
+        for (List<FileObject> list : rootsByPackage.values())
+          list.add(roots[i]);
+        continue;
+      }
+      for (String pkg : packages[i]) {
+        List<FileObject> list = rootsByPackage.get(pkg);
+        if (null == list) {
+          list = new ArrayList<FileObject>(unindexed.size() + 1);
+          list.addAll(unindexed);
+          rootsByPackage.put(pkg, list);
+        }
+        list.add(roots[i]);
+      }
+    }
+  }
+
+  /**
+   * Build an index over the roots of a VFSClassLoader
+   *
+   * @param roots
+   *          the classpath roots, in search order
+   * @param previous
+   *          index whose packages can be reused for unchanged archives, may be null
+   * @param changed
+   *          URIs of the archive files that must be read again
+   * @return the new index
+   * @throws FileSystemException
+   */
+  static PackageIndex build(FileObject[] roots, PackageIndex previous, Collection<String> changed) throws FileSystemException {
+    Map<String,Set<String>> reusable = new HashMap<String,Set<String>>();
+    if (null != previous) {
+      for (int i = 0; i < previous.roots.length; i++) {
+        if (null != previous.packages[i] && !changed.contains(previous.keys[i]))
+          reusable.put(previous.keys[i], previous.packages[i]);
+      }
+    }
+
+    PackageIndex index = new PackageIndex(roots);
+    for (int i = 0; i < roots.length; i++) {
+      FileName name = roots[i].getName();
+      if (!(name instanceof LayeredFileName))
+        continue;
+      index.keys[i] = ((LayeredFileName) name).getOuterName().getURI();
+      Set<String> pkgs = reusable.get(index.keys[i]);
+      if (null == pkgs) {
+        pkgs = new HashSet<String>();
+        addPackages(roots[i], "", pkgs);
+      }
+      index.packages[i] = pkgs;
+    }
+    index.mapPackages();
+    return index;
+  }
+
+  private static void addPackages(FileObject folder, String prefix, Set<String> pkgs) throws FileSystemException {
+    for (FileObject child : folder.getChildren()) {
+      if (child.getType().hasChildren())
+        addPackages(child, prefix + child.getName().getBaseName() + "/", pkgs);
+      else
+        pkgs.add(prefix);
+    }
+  }
+
+  /**
+   * @param path
+   *          resource path, for example "org/apache/accumulo/Foo.class"
+   * @return the roots that may contain the resource, in search order, shared by all lookups and not to be modified
+   */
+  List<FileObject> getRoots(String path) {
+    String dir = path.substring(0, path.lastIndexOf('/') + 1);
+    List<FileObject> result = rootsByPackage.get(dir);
+    if (null == result)
+      return unindexed;
+    return result;
+  }
+
+}
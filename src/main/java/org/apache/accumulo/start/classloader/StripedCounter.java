@@ -0,0 +1,54 @@
+package org.apache.accumulo.start.classloader;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that threads add to without contending with each other. Each thread adds to one of
+ * several cells, picked by its id, and the cells are summed when the counter is read. Cells are
+ * spread a cache line apart so that threads on different cores do not share one.
+ */
+public class StripedCounter {
+
+  /**
+   * Longs between two cells, 64 bytes
+   */
+  static final int PAD = 8;
+
+  /**
+   * Number of cells, the smallest power of two that is at least the number of processors, at most 64
+   */
+  static final int STRIPES;
+
+  static {
+    int stripes = 1;
+    int processors = Runtime.getRuntime().availableProcessors();
+    while (stripes < processors && stripes < 64)
+      stripes <<= 1;
+    STRIPES = stripes;
+  }
+
+  private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+
+  /**
+   * @return the stripe of the current thread
+   */
+  static int stripe() {
+    return (int) Thread.currentThread().getId() & (STRIPES - 1);
+  }
+
+  public void add(long delta) {
+    cells.addAndGet(stripe() * PAD, delta);
+  }
+
+  public void increment() {
+    add(1);
+  }
+
+  public long get() {
+    long sum = 0;
+    for (int i = 0; i < STRIPES; i++)
+      sum += cells.get(i * PAD);
+    return sum;
+  }
+
+}
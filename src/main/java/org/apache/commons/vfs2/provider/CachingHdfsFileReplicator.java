@@ -0,0 +1,272 @@
+package org.apache.commons.vfs2.provider;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.vfs2.FileContent;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSelector;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.Selectors;
+import org.apache.commons.vfs2.impl.DefaultFileReplicator;
+import org.apache.log4j.Logger;
+
+/**
+ * Replicator that keeps the local copies of HDFS files in a directory that outlives the JVM. A copy
+ * is named after a hash of the file's URI, length and modification time, so a context reload or a
+ * restart finds the copies of unchanged jars already on disk and a replaced jar gets a new copy.
+ *
+ * The directory is bounded in size. When a new copy pushes it over the limit, the least recently
+ * used copies are deleted. Folders, other selectors and files outside HDFS are replicated by
+ * {@link DefaultFileReplicator} as before.
+ */
+public class CachingHdfsFileReplicator extends DefaultFileReplicator {
+
+  private static final Logger log = Logger.getLogger(CachingHdfsFileReplicator.class);
+
+  public static final long DEFAULT_MAX_SIZE = 1024L * 1024L * 1024L;
+
+  private static final String SUFFIX = ".jar";
+  private static final String TMP_SUFFIX = ".tmp";
+
+  private final File cacheDir;
+  private final long maxSize;
+
+  // copies in least recently used order
+  private final LinkedHashMap<String,File> copies = new LinkedHashMap<String,File>(16, 0.75f, true);
+  private long size = 0;
+
+  private final AtomicLong hits = new AtomicLong(0);
+  private final AtomicLong misses = new AtomicLong(0);
+  private final AtomicLong evictions = new AtomicLong(0);
+  private final AtomicLong bytesReplicated = new AtomicLong(0);
+  private final ThreadLocal<long[]> bytesReplicatedByThread = new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      return new long[1];
+    }
+  };
+
+  public CachingHdfsFileReplicator(File cacheDir) {
+    this(cacheDir, DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * @param cacheDir
+   *          directory holding the copies, kept when the replicator is closed
+   * @param maxSize
+   *          most bytes to keep in the directory, zero or less for no limit
+   */
+  public CachingHdfsFileReplicator(File cacheDir, long maxSize) {
+    this.cacheDir = cacheDir;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Picks up the copies left in the cache directory by a previous run
+   */
+  @Override
+  public void init() throws FileSystemException {
+    super.init();
+    if (!cacheDir.isDirectory() && !cacheDir.mkdirs())
+      throw new FileSystemException("Unable to create jar cache directory " + cacheDir);
+    File[] files = cacheDir.listFiles();
+    if (null == files)
+      return;
+    // oldest first, the modification time of a copy is updated when it is used
+    Arrays.sort(files, new Comparator<File>() {
+      public int compare(File f1, File f2) {
+        long m1 = f1.lastModified();
+        long m2 = f2.lastModified();
+        return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+      }
+    });
+    synchronized (this) {
+      for (File file : files) {
+        String name = file.getName();
+        if (name.endsWith(TMP_SUFFIX)) {
+          // left over from an interrupted copy
+          file.delete();
+        } else if (name.endsWith(SUFFIX)) {
+          copies.put(name.substring(0, name.length() - SUFFIX.length()), file);
+          size += file.length();
+        }
+      }
+      evict(null);
+    }
+    log.debug("Found " + copies.size() + " cached jars using " + size + " bytes in " + cacheDir);
+  }
+
+  @Override
+  public File replicateFile(FileObject srcFile, FileSelector selector) throws FileSystemException {
+    if (selector != Selectors.SELECT_SELF || !(srcFile.getFileSystem() instanceof ReadOnlyHdfsFileSystem) || srcFile.getType() != FileType.FILE)
+      return super.replicateFile(srcFile, selector);
+
+    FileContent content = srcFile.getContent();
+    String key = getKey(srcFile.getName().getURI(), content.getSize(), content.getLastModifiedTime());
+
+    synchronized (this) {
+      File copy = copies.get(key);
+      if (null != copy) {
+        if (copy.isFile()) {
+          hits.incrementAndGet();
+          copy.setLastModified(System.currentTimeMillis());
+          return copy;
+        }
+        // deleted behind our back
+        copies.remove(key);
+      }
+    }
+
+    misses.incrementAndGet();
+    File copy = new File(cacheDir, key + SUFFIX);
+    File tmp = new File(cacheDir, key + "-" + Thread.currentThread().getId() + TMP_SUFFIX);
+    try {
+      copy(content, tmp);
+    } catch (IOException e) {
+      tmp.delete();
+      throw new FileSystemException("Error copying " + srcFile.getName() + " to " + tmp, e);
+    }
+    // another thread may have copied the same file in the meantime, either copy will do
+    if (!tmp.renameTo(copy)) {
+      copy.delete();
+      if (!tmp.renameTo(copy)) {
+        tmp.delete();
+        throw new FileSystemException("Unable to move " + tmp + " to " + copy);
+      }
+    }
+    bytesReplicated.addAndGet(copy.length());
+    bytesReplicatedByThread.get()[0] += copy.length();
+    log.debug("Cached " + srcFile.getName() + " as " + copy);
+
+    synchronized (this) {
+      File previous = copies.put(key, copy);
+      if (null != previous)
+        size -= previous.length();
+      size += copy.length();
+      evict(key);
+    }
+    return copy;
+  }
+
+  private static void copy(FileContent content, File dest) throws IOException {
+    InputStream in = content.getInputStream();
+    try {
+      OutputStream out = new FileOutputStream(dest);
+      try {
+        byte[] buffer = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(buffer)) != -1)
+          out.write(buffer, 0, n);
+      } finally {
+        out.close();
+      }
+    } finally {
+      content.close();
+    }
+  }
+
+  /**
+   * Delete the least recently used copies until the directory fits in the maximum size
+   *
+   * @param keep
+   *          key of a copy that is about to be used and must not be deleted, may be null
+   */
+  private void evict(String keep) {
+    if (maxSize <= 0)
+      return;
+    Iterator<Entry<String,File>> iter = copies.entrySet().iterator();
+    while (size > maxSize && iter.hasNext()) {
+      Entry<String,File> entry = iter.next();
+      if (entry.getKey().equals(keep))
+        continue;
+      File file = entry.getValue();
+      size -= file.length();
+      iter.remove();
+      if (!file.delete())
+        log.warn("Unable to delete cached jar " + file);
+      evictions.incrementAndGet();
+      log.debug("Evicted cached jar " + file);
+    }
+  }
+
+  private static String getKey(String uri, long length, long modified) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    byte[] hash;
+    try {
+      hash = digest.digest((uri + "\0" + length + "\0" + modified).getBytes("UTF-8"));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    StringBuilder sb = new StringBuilder(hash.length * 2);
+    for (byte b : hash) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+      sb.append(Character.forDigit(b & 0xf, 16));
+    }
+    return sb.toString();
+  }
+
+  public File getCacheDir() {
+    return cacheDir;
+  }
+
+  /**
+   * @return number of requests served from a copy already on disk
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return number of requests that copied the file out of HDFS
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return number of copies deleted to stay under the maximum size
+   */
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * @return number of bytes copied out of HDFS
+   */
+  public long getBytesReplicated() {
+    return bytesReplicated.get();
+  }
+  
+  /**
+   * @return number of bytes copied out of HDFS by the calling thread, lets callers attribute copies to their own requests
+   */
+  public long getBytesReplicatedByCurrentThread() {
+    return bytesReplicatedByThread.get()[0];
+  }
+
+  /**
+   * @return number of bytes currently held in the cache directory
+   */
+  public synchronized long getSize() {
+    return size;
+  }
+
+}
@@ -0,0 +1,132 @@
+package org.apache.commons.vfs2.provider;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.log4j.Logger;
+
+/**
+ * DFS clients shared by every {@link ReadOnlyHdfsFileSystem} in the JVM, one per NameNode URI and
+ * set of client settings from {@link HdfsFileSystemConfigBuilder}. Clients are counted by the file
+ * systems using them and closed when the last one is released. Clients are created with
+ * FileSystem.newInstance, so closing one never closes a client that other code got from the Hadoop
+ * FileSystem cache.
+ * 
+ * Acquiring a client that is already open only increments its reference count, creating and closing clients is serialized.
+ */
+public class HdfsClientRegistry {
+
+  private static final Logger log = Logger.getLogger(HdfsClientRegistry.class);
+
+  private static class Client {
+    private final String key;
+    private final FileSystem fs;
+    // -1 once the client is closed
+    private final AtomicInteger references = new AtomicInteger(0);
+
+    private Client(String key, FileSystem fs) {
+      this.key = key;
+      this.fs = fs;
+    }
+  }
+
+  private static final ConcurrentMap<String,Client> clients = new ConcurrentHashMap<String,Client>();
+  private static final ConcurrentMap<FileSystem,Client> byClient = new ConcurrentHashMap<FileSystem,Client>();
+
+  private HdfsClientRegistry() {}
+
+  /**
+   * @return a configuration for a NameNode with only the client settings in the options applied, Hadoop site files are not read
+   */
+  public static Configuration getConfiguration(String hdfsUri, FileSystemOptions opts) {
+    HdfsFileSystemConfigBuilder builder = HdfsFileSystemConfigBuilder.getInstance();
+    Configuration conf = new Configuration(false);
+    conf.set(FileSystem.FS_DEFAULT_NAME_KEY, hdfsUri);
+    Integer bufferSize = builder.getBufferSize(opts);
+    if (null != bufferSize)
+      conf.setInt("io.file.buffer.size", bufferSize);
+    Integer socketTimeout = builder.getSocketTimeout(opts);
+    if (null != socketTimeout)
+      conf.setInt("dfs.socket.timeout", socketTimeout);
+    Integer socketWriteTimeout = builder.getSocketWriteTimeout(opts);
+    if (null != socketWriteTimeout)
+      conf.setInt("dfs.datanode.socket.write.timeout", socketWriteTimeout);
+    Boolean shortCircuit = builder.getShortCircuitRead(opts);
+    if (null != shortCircuit)
+      conf.setBoolean("dfs.client.read.shortcircuit", shortCircuit);
+    Boolean skipChecksum = builder.getShortCircuitSkipChecksum(opts);
+    if (null != skipChecksum)
+      conf.setBoolean("dfs.client.read.shortcircuit.skip.checksum", skipChecksum);
+    return conf;
+  }
+
+  private static String getKey(String hdfsUri, FileSystemOptions opts) {
+    HdfsFileSystemConfigBuilder builder = HdfsFileSystemConfigBuilder.getInstance();
+    return hdfsUri + ";buffer=" + builder.getBufferSize(opts) + ";timeout=" + builder.getSocketTimeout(opts) + ";writeTimeout="
+        + builder.getSocketWriteTimeout(opts) + ";shortCircuit=" + builder.getShortCircuitRead(opts)
+        + ";skipChecksum=" + builder.getShortCircuitSkipChecksum(opts);
+  }
+
+  private static boolean reference(Client client) {
+    while (true) {
+      int count = client.references.get();
+      if (count <= 0)
+        return false;
+      if (client.references.compareAndSet(count, count + 1))
+        return true;
+    }
+  }
+
+  /**
+   * Get the client for a NameNode, creating it if no file system uses it yet. Every call must be matched by a call to {@link #release(FileSystem)}.
+   */
+  public static FileSystem acquire(String hdfsUri, FileSystemOptions opts) throws IOException {
+    String key = getKey(hdfsUri, opts);
+    Client client = clients.get(key);
+    if (null != client && reference(client))
+      return client.fs;
+    synchronized (clients) {
+      client = clients.get(key);
+      if (null != client && reference(client))
+        return client.fs;
+      log.debug("Creating DFS client for " + key);
+      client = new Client(key, FileSystem.newInstance(URI.create(hdfsUri), getConfiguration(hdfsUri, opts)));
+      client.references.set(1);
+      clients.put(key, client);
+      byClient.put(client.fs, client);
+      return client.fs;
+    }
+  }
+
+  /**
+   * Release a client, closing it if no other file system uses it
+   */
+  public static void release(FileSystem fs) throws IOException {
+    Client client = byClient.get(fs);
+    if (null == client || client.references.decrementAndGet() > 0)
+      return;
+    synchronized (clients) {
+      // another file system may have acquired the client since
+      if (!client.references.compareAndSet(0, -1))
+        return;
+      clients.remove(client.key, client);
+      byClient.remove(fs);
+    }
+    log.debug("Closing DFS client for " + client.key);
+    fs.close();
+  }
+
+  /**
+   * @return number of open clients
+   */
+  static int size() {
+    return clients.size();
+  }
+
+}
@@ -7,7 +7,9 @@ import java.util.Map;
 
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileSystemOptions;
 import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.NameScope;
 import org.apache.commons.vfs2.RandomAccessContent;
 import org.apache.commons.vfs2.util.RandomAccessMode;
 import org.apache.hadoop.fs.FileStatus;
@@ -28,6 +30,7 @@ public class HdfsFileObject extends AbstractFileObject {
   private FileSystem hdfs = null;
   private Path path = null;
   private FileStatus stat = null;
+  private FileStatus listed = null;
   
   protected HdfsFileObject(AbstractFileName name, ReadOnlyHdfsFileSystem fs, FileSystem hdfs, Path p) {
     super(name,fs);
@@ -35,10 +38,33 @@ public class HdfsFileObject extends AbstractFileObject {
     this.hdfs = hdfs;
     this.path = p;
   }
+  
+  /**
+   * Create a file object for an entry of a directory listing
+   * 
+   * @param listed
+   *          status returned by the listing, used instead of asking the NameNode until the object is refreshed
+   */
+  protected HdfsFileObject(AbstractFileName name, ReadOnlyHdfsFileSystem fs, FileSystem hdfs, Path p, FileStatus listed) {
+    this(name, fs, hdfs, p);
+    this.listed = listed;
+  }
 
   @Override
   protected void doAttach() throws Exception {
-      this.stat = this.hdfs.getFileStatus(this.path);
+    if (null != this.listed) {
+      this.stat = this.listed;
+      return;
+    }
+    this.stat = null;
+    this.stat = this.fs.getFileStatus(this.path);
+  }
+
+  @Override
+  protected void doDetach() throws Exception {
+    // the file system's status cache is left alone, refreshes are frequent and the cache is there to answer them
+    this.stat = null;
+    this.listed = null;
   }
 
   @Override
@@ -103,13 +129,22 @@ public class HdfsFileObject extends AbstractFileObject {
     return false;
   }
 
+  /**
+   * Lists the directory with a single call to the NameNode and hands each child the status returned
+   * by the listing, so resolving the children does not cost a call per child.
+   */
   @Override
   protected FileObject[] doListChildrenResolved() throws Exception {
-    String[] children = doListChildren();
-    FileObject[] fo = new FileObject[children.length];
-    for (int i = 0; i < children.length; i++) {
-      Path p = new Path(this.path, children[i]);
-      fo[i] = this.fs.resolveFile(p.toUri().toString());
+    FileStatus[] files = this.hdfs.listStatus(this.path);
+    if (null == files)
+      return new FileObject[0];
+    FileObject[] fo = new FileObject[files.length];
+    for (int i = 0; i < files.length; i++) {
+      String child = files[i].getPath().getName();
+      AbstractFileName name = (AbstractFileName) this.fs.getFileSystemManager().resolveName(getName(), child, NameScope.CHILD);
+      Path p = new Path(this.path, child);
+      this.fs.putFileStatus(p, files[i]);
+      fo[i] = new HdfsFileObject(name, this.fs, this.hdfs, p, files[i]);
     }
     return fo;
   }
@@ -158,7 +193,10 @@ public class HdfsFileObject extends AbstractFileObject {
   protected RandomAccessContent doGetRandomAccessContent(RandomAccessMode mode) throws Exception {
     if (mode.equals(RandomAccessMode.READWRITE))
       throw new UnsupportedOperationException();
-    return new HdfsReadOnlyRandomAccessContent(this.path, this.hdfs);
+    HdfsFileSystemConfigBuilder builder = HdfsFileSystemConfigBuilder.getInstance();
+    FileSystemOptions opts = this.fs.getFileSystemOptions();
+    return new HdfsReadOnlyRandomAccessContent(this.path, this.hdfs, this.stat.getLen(), this.stat.getBlockSize(), builder.getReadAheadSize(opts),
+        builder.getReadAheadWindows(opts));
   }
 
   @Override
@@ -2,11 +2,27 @@ package org.apache.commons.vfs2.provider;
 
 import org.apache.commons.vfs2.FileSystem;
 import org.apache.commons.vfs2.FileSystemConfigBuilder;
+import org.apache.commons.vfs2.FileSystemOptions;
 
 public class HdfsFileSystemConfigBuilder extends FileSystemConfigBuilder {
 
   private final static HdfsFileSystemConfigBuilder BUILDER = new HdfsFileSystemConfigBuilder(); 
   
+  private static final String STATUS_CACHE_TTL = HdfsFileSystemConfigBuilder.class.getName() + ".STATUS_CACHE_TTL";
+  private static final String STATUS_CACHE_SIZE = HdfsFileSystemConfigBuilder.class.getName() + ".STATUS_CACHE_SIZE";
+  private static final String READ_AHEAD_SIZE = HdfsFileSystemConfigBuilder.class.getName() + ".READ_AHEAD_SIZE";
+  private static final String READ_AHEAD_WINDOWS = HdfsFileSystemConfigBuilder.class.getName() + ".READ_AHEAD_WINDOWS";
+  
+  private static final String BUFFER_SIZE = HdfsFileSystemConfigBuilder.class.getName() + ".BUFFER_SIZE";
+  private static final String SOCKET_TIMEOUT = HdfsFileSystemConfigBuilder.class.getName() + ".SOCKET_TIMEOUT";
+  private static final String SOCKET_WRITE_TIMEOUT = HdfsFileSystemConfigBuilder.class.getName() + ".SOCKET_WRITE_TIMEOUT";
+  private static final String SHORT_CIRCUIT_READ = HdfsFileSystemConfigBuilder.class.getName() + ".SHORT_CIRCUIT_READ";
+  private static final String SHORT_CIRCUIT_SKIP_CHECKSUM = HdfsFileSystemConfigBuilder.class.getName() + ".SHORT_CIRCUIT_SKIP_CHECKSUM";
+  
+  public static final int DEFAULT_STATUS_CACHE_SIZE = 10000;
+  public static final int DEFAULT_READ_AHEAD_SIZE = 64 * 1024;
+  public static final int DEFAULT_READ_AHEAD_WINDOWS = 4;
+  
   private String hdfsUri = null;
   
   public String getHdfsUri() {
@@ -17,6 +33,135 @@ public class HdfsFileSystemConfigBuilder extends FileSystemConfigBuilder {
     this.hdfsUri = hdfsUri;
   }
 
+  /**
+   * Sets how long the status of a path is reused before asking the NameNode again, zero (the default) disables caching
+   * 
+   * @param opts
+   * @param millis
+   */
+  public void setStatusCacheTtl(FileSystemOptions opts, long millis) {
+    setParam(opts, STATUS_CACHE_TTL, Long.valueOf(millis));
+  }
+  
+  public long getStatusCacheTtl(FileSystemOptions opts) {
+    return getLong(opts, STATUS_CACHE_TTL, 0L);
+  }
+  
+  /**
+   * Sets the most paths whose status is cached, the least recently used are dropped first
+   * 
+   * @param opts
+   * @param entries
+   */
+  public void setStatusCacheSize(FileSystemOptions opts, int entries) {
+    setParam(opts, STATUS_CACHE_SIZE, Integer.valueOf(entries));
+  }
+  
+  public int getStatusCacheSize(FileSystemOptions opts) {
+    return getInteger(opts, STATUS_CACHE_SIZE, DEFAULT_STATUS_CACHE_SIZE);
+  }
+
+  /**
+   * Sets how many bytes random access content reads ahead of small reads, zero disables reading ahead
+   * 
+   * @param opts
+   * @param bytes
+   */
+  public void setReadAheadSize(FileSystemOptions opts, int bytes) {
+    setParam(opts, READ_AHEAD_SIZE, Integer.valueOf(bytes));
+  }
+  
+  public int getReadAheadSize(FileSystemOptions opts) {
+    return getInteger(opts, READ_AHEAD_SIZE, DEFAULT_READ_AHEAD_SIZE);
+  }
+  
+  /**
+   * Sets how many read ahead windows each random access content keeps
+   * 
+   * @param opts
+   * @param windows
+   */
+  public void setReadAheadWindows(FileSystemOptions opts, int windows) {
+    setParam(opts, READ_AHEAD_WINDOWS, Integer.valueOf(windows));
+  }
+  
+  public int getReadAheadWindows(FileSystemOptions opts) {
+    return getInteger(opts, READ_AHEAD_WINDOWS, DEFAULT_READ_AHEAD_WINDOWS);
+  }
+
+  /**
+   * Sets the io.file.buffer.size of the DFS client, the DFS client default is used when not set
+   * 
+   * @param opts
+   * @param bytes
+   */
+  public void setBufferSize(FileSystemOptions opts, int bytes) {
+    setParam(opts, BUFFER_SIZE, Integer.valueOf(bytes));
+  }
+  
+  public Integer getBufferSize(FileSystemOptions opts) {
+    return getInteger(opts, BUFFER_SIZE);
+  }
+  
+  /**
+   * Sets the read timeout of the DFS client's sockets (dfs.socket.timeout), the DFS client default is used when not set
+   * 
+   * @param opts
+   * @param millis
+   */
+  public void setSocketTimeout(FileSystemOptions opts, int millis) {
+    setParam(opts, SOCKET_TIMEOUT, Integer.valueOf(millis));
+  }
+  
+  public Integer getSocketTimeout(FileSystemOptions opts) {
+    return getInteger(opts, SOCKET_TIMEOUT);
+  }
+  
+  /**
+   * Sets the write timeout of the DFS client's sockets (dfs.datanode.socket.write.timeout), the DFS client default is used when not set
+   * 
+   * @param opts
+   * @param millis
+   */
+  public void setSocketWriteTimeout(FileSystemOptions opts, int millis) {
+    setParam(opts, SOCKET_WRITE_TIMEOUT, Integer.valueOf(millis));
+  }
+  
+  public Integer getSocketWriteTimeout(FileSystemOptions opts) {
+    return getInteger(opts, SOCKET_WRITE_TIMEOUT);
+  }
+  
+  /**
+   * Sets whether blocks stored on the local DataNode are read directly from its disks (dfs.client.read.shortcircuit), the DFS client default is
+   * used when not set. The DataNode must allow the user to read its block files, see dfs.block.local-path-access.user. Blocks on other DataNodes, or
+   * that the local DataNode refuses, are read over TCP as usual.
+   * 
+   * @param opts
+   * @param shortCircuit
+   */
+  public void setShortCircuitRead(FileSystemOptions opts, boolean shortCircuit) {
+    setParam(opts, SHORT_CIRCUIT_READ, Boolean.valueOf(shortCircuit));
+  }
+  
+  public Boolean getShortCircuitRead(FileSystemOptions opts) {
+    return getBoolean(opts, SHORT_CIRCUIT_READ);
+  }
+  
+  /**
+   * Sets whether checksums are skipped on short-circuit reads (dfs.client.read.shortcircuit.skip.checksum), the DFS client default is used when
+   * not set
+   * 
+   * @param opts
+   * @param skipChecksum
+   */
+  public void setShortCircuitSkipChecksum(FileSystemOptions opts, boolean skipChecksum) {
+    setParam(opts, SHORT_CIRCUIT_SKIP_CHECKSUM, Boolean.valueOf(skipChecksum));
+  }
+  
+  public Boolean getShortCircuitSkipChecksum(FileSystemOptions opts) {
+    return getBoolean(opts, SHORT_CIRCUIT_SKIP_CHECKSUM);
+  }
+
   @Override
   protected Class<? extends FileSystem> getConfigClass() {
     return ReadOnlyHdfsFileSystem.class;
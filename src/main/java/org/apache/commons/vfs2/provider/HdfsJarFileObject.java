@@ -0,0 +1,103 @@
+package org.apache.commons.vfs2.provider;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileType;
+
+/**
+ * An entry or folder of a {@link HdfsJarFileSystem}
+ */
+public class HdfsJarFileObject extends AbstractFileObject {
+
+  private final HdfsJarFileSystem fs;
+
+  protected HdfsJarFileObject(AbstractFileName name, HdfsJarFileSystem fs) {
+    super(name, fs);
+    this.fs = fs;
+  }
+
+  @Override
+  protected FileType doGetType() throws Exception {
+    if (fs.isFolder(getName()))
+      return FileType.FOLDER;
+    if (fs.isFile(getName()))
+      return FileType.FILE;
+    return FileType.IMAGINARY;
+  }
+
+  @Override
+  protected String[] doListChildren() throws Exception {
+    return fs.getChildren(getName());
+  }
+
+  @Override
+  protected long doGetContentSize() throws Exception {
+    return fs.getSize(getName());
+  }
+
+  @Override
+  protected InputStream doGetInputStream() throws Exception {
+    ByteBuffer bytes = fs.getContent(getName());
+    if (null == bytes)
+      throw new FileSystemException("vfs.provider/read-not-file.error", getName());
+    return new ByteBufferInputStream(bytes);
+  }
+
+  @Override
+  protected long doGetLastModifiedTime() throws Exception {
+    return fs.getLastModifiedTime();
+  }
+
+  @Override
+  protected Map<String,Object> doGetAttributes() throws Exception {
+    return fs.getAttributes();
+  }
+
+  @Override
+  protected boolean doIsWriteable() throws Exception {
+    return false;
+  }
+
+  /**
+   * Reads the bytes of an entry that was read from HDFS in one piece
+   */
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0)
+        return 0;
+      if (!buffer.hasRemaining())
+        return -1;
+      int n = Math.min(len, buffer.remaining());
+      buffer.get(b, off, n);
+      return n;
+    }
+
+    @Override
+    public long skip(long n) {
+      int skip = (int) Math.max(0, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + skip);
+      return skip;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+
+}
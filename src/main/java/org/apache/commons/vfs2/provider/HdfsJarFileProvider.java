@@ -0,0 +1,26 @@
+package org.apache.commons.vfs2.provider;
+
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystem;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.provider.jar.JarFileProvider;
+
+/**
+ * Jar provider that reads jars stored in HDFS in place with a {@link HdfsJarFileSystem} instead of
+ * replicating them to local disk first. Jars on any other file system are opened by
+ * {@link JarFileProvider} as before.
+ */
+public class HdfsJarFileProvider extends JarFileProvider {
+
+  @Override
+  protected FileSystem doCreateFileSystem(String scheme, FileObject file, FileSystemOptions fileSystemOptions) throws FileSystemException {
+    if (!(file.getFileSystem() instanceof ReadOnlyHdfsFileSystem))
+      return super.doCreateFileSystem(scheme, file, fileSystemOptions);
+    AbstractFileName rootName = new LayeredFileName(scheme, file.getName(), FileName.ROOT_PATH, FileType.FOLDER);
+    return new HdfsJarFileSystem(rootName, file, fileSystemOptions);
+  }
+
+}
@@ -0,0 +1,150 @@
+package org.apache.commons.vfs2.provider;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.apache.commons.vfs2.Capability;
+import org.apache.commons.vfs2.FileName;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.util.RandomAccessMode;
+
+/**
+ * A jar in HDFS read in place through {@link HdfsReadOnlyRandomAccessContent}. Opening the file
+ * system reads only the central directory, and an entry is read from HDFS when its content is asked
+ * for. The main attributes of the manifest are exposed as attributes of every file, the way the jar
+ * provider does it. Signatures are not verified, so entries have no certificates.
+ */
+public class HdfsJarFileSystem extends AbstractFileSystem {
+
+  public static final Collection<Capability> capabilities = Collections.unmodifiableCollection(Arrays.asList(new Capability[] {Capability.GET_TYPE,
+      Capability.GET_LAST_MODIFIED, Capability.LIST_CHILDREN, Capability.READ_CONTENT, Capability.URI, Capability.COMPRESS, Capability.VIRTUAL,
+      Capability.ATTRIBUTES, Capability.MANIFEST_ATTRIBUTES}));
+
+  private final FileObject file;
+  private RandomAccessJarFile jar = null;
+  // folder path, without leading or trailing slash, to the names of its children
+  private final Map<String,Set<String>> folders = new HashMap<String,Set<String>>();
+  private Map<String,Object> attributes = Collections.emptyMap();
+
+  protected HdfsJarFileSystem(AbstractFileName rootName, FileObject file, FileSystemOptions fileSystemOptions) {
+    super(rootName, file, fileSystemOptions);
+    this.file = file;
+  }
+
+  @Override
+  public void init() throws FileSystemException {
+    super.init();
+    try {
+      jar = new RandomAccessJarFile(file.getContent().getRandomAccessContent(RandomAccessMode.READ));
+    } catch (IOException e) {
+      throw new FileSystemException("Unable to read jar " + file.getName(), e);
+    }
+    folders.put("", new TreeSet<String>());
+    for (String name : jar.getNames())
+      addToFolders(name);
+    readManifest();
+  }
+
+  private void addToFolders(String path) {
+    int idx = path.lastIndexOf('/');
+    String folder = idx < 0 ? "" : path.substring(0, idx);
+    Set<String> children = folders.get(folder);
+    boolean newFolder = null == children;
+    if (newFolder) {
+      children = new TreeSet<String>();
+      folders.put(folder, children);
+    }
+    children.add(path.substring(idx + 1));
+    if (newFolder && idx > 0)
+      addToFolders(folder);
+  }
+
+  private void readManifest() throws FileSystemException {
+    try {
+      ByteBuffer bytes = jar.getEntry(JarFile.MANIFEST_NAME);
+      if (null == bytes)
+        return;
+      Manifest manifest = new Manifest(new ByteArrayInputStream(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining()));
+      Map<String,Object> attrs = new HashMap<String,Object>();
+      for (Map.Entry<Object,Object> entry : manifest.getMainAttributes().entrySet())
+        attrs.put(((Attributes.Name) entry.getKey()).toString(), entry.getValue());
+      attributes = Collections.unmodifiableMap(attrs);
+    } catch (IOException e) {
+      throw new FileSystemException("Unable to read the manifest of " + file.getName(), e);
+    }
+  }
+
+  private static String toEntryName(FileName name) throws FileSystemException {
+    String path = name.getPathDecoded();
+    return path.startsWith("/") ? path.substring(1) : path;
+  }
+
+  boolean isFolder(FileName name) throws FileSystemException {
+    return folders.containsKey(toEntryName(name));
+  }
+
+  boolean isFile(FileName name) throws FileSystemException {
+    return jar.contains(toEntryName(name));
+  }
+
+  String[] getChildren(FileName name) throws FileSystemException {
+    Set<String> children = folders.get(toEntryName(name));
+    if (null == children)
+      return null;
+    String[] result = new String[children.size()];
+    int i = 0;
+    for (String child : children)
+      result[i++] = UriParser.encode(child);
+    return result;
+  }
+
+  long getSize(FileName name) throws FileSystemException {
+    return jar.getSize(toEntryName(name));
+  }
+
+  ByteBuffer getContent(FileName name) throws IOException {
+    return jar.getEntry(toEntryName(name));
+  }
+
+  long getLastModifiedTime() throws FileSystemException {
+    return file.getContent().getLastModifiedTime();
+  }
+
+  Map<String,Object> getAttributes() {
+    return attributes;
+  }
+
+  @Override
+  protected FileObject createFile(AbstractFileName name) throws Exception {
+    return new HdfsJarFileObject(name, this);
+  }
+
+  @Override
+  protected void addCapabilities(Collection<Capability> caps) {
+    caps.addAll(capabilities);
+  }
+
+  @Override
+  protected void doCloseCommunicationLink() {
+    try {
+      if (null != jar)
+        jar.close();
+    } catch (IOException e) {
+      throw new RuntimeException("Error closing jar " + file.getName(), e);
+    }
+  }
+
+}
@@ -1,24 +1,177 @@
 package org.apache.commons.vfs2.provider;
 
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import org.apache.commons.vfs2.RandomAccessContent;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 
+/**
+ * Read only random access to an HDFS file built on positional reads. Every read asks the DFS client
+ * for exactly the bytes at the current file pointer, so seeking is free and never reopens a block
+ * reader. The file pointer is guarded by this object, and the positional methods
+ * {@link #read(long, byte[], int, int)} and {@link #readFully(long, byte[], int, int)} leave it
+ * alone, so one instance can be shared by threads reading different parts of the file.
+ * 
+ * Reads smaller than the read ahead size are served from windows of that size, aligned to the
+ * window size within each HDFS block so that a window never spans two blocks. The most recently used
+ * windows are kept, so parsing many small records, like the headers of a zip file, costs a few reads
+ * from the DFS client instead of one per record.
+ */
 public class HdfsReadOnlyRandomAccessContent implements RandomAccessContent {
 
   private FileSystem fs = null;
   private Path path = null;
   private FSDataInputStream fis = null;
+  private long pos = 0;
+  private long length = -1;
+  private long blockSize = 0;
+  private int windowSize = 0;
+  private Map<Long,byte[]> windows = null;
   
   public HdfsReadOnlyRandomAccessContent(Path path, FileSystem fs) throws IOException {
     this.fs = fs;
     this.path = path;
     this.fis = this.fs.open(this.path);
   }
+  
+  /**
+   * @param length
+   *          length of the file, saves asking the NameNode for it
+   */
+  public HdfsReadOnlyRandomAccessContent(Path path, FileSystem fs, long length) throws IOException {
+    this(path, fs);
+    this.length = length;
+  }
+  
+  /**
+   * @param length
+   *          length of the file
+   * @param blockSize
+   *          HDFS block size of the file, windows do not span block boundaries
+   * @param windowSize
+   *          bytes to read ahead of small reads, zero or less to read exactly what is asked for
+   * @param maxWindows
+   *          number of windows to keep
+   */
+  public HdfsReadOnlyRandomAccessContent(Path path, FileSystem fs, long length, long blockSize, int windowSize, final int maxWindows) throws IOException {
+    this(path, fs, length);
+    this.blockSize = blockSize;
+    if (windowSize > 0 && maxWindows > 0) {
+      this.windowSize = windowSize;
+      this.windows = new LinkedHashMap<Long,byte[]>(maxWindows * 2, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Entry<Long,byte[]> eldest) {
+          return size() > maxWindows;
+        }
+      };
+    }
+  }
+  
+  /**
+   * @return the window holding a position that is inside the file
+   */
+  private byte[] getWindow(long position) throws IOException {
+    long blockStart = 0;
+    long blockEnd = Long.MAX_VALUE;
+    if (this.blockSize > 0) {
+      blockStart = position - position % this.blockSize;
+      blockEnd = blockStart + this.blockSize;
+    }
+    Long start = Long.valueOf(blockStart + ((position - blockStart) / this.windowSize) * this.windowSize);
+    synchronized (this.windows) {
+      byte[] window = this.windows.get(start);
+      if (null != window)
+        return window;
+    }
+    long end = Math.min(Math.min(start + this.windowSize, blockEnd), length());
+    byte[] window = new byte[(int) (end - start)];
+    int n = 0;
+    while (n < window.length) {
+      int count = this.fis.read(start + n, window, n, window.length - n);
+      if (count < 0)
+        break;
+      n += count;
+    }
+    if (n < window.length) {
+      // the file is shorter than its status said
+      byte[] shorter = new byte[n];
+      System.arraycopy(window, 0, shorter, 0, n);
+      window = shorter;
+    }
+    synchronized (this.windows) {
+      this.windows.put(start, window);
+    }
+    return window;
+  }
+
+  /**
+   * Read bytes at a position in the file without moving the file pointer
+   * 
+   * @return number of bytes read, or -1 at the end of the file
+   */
+  public int read(long position, byte[] b, int off, int len) throws IOException {
+    if (len == 0)
+      return 0;
+    if (null == this.windows || len >= this.windowSize)
+      return this.fis.read(position, b, off, len);
+    if (position >= length())
+      return -1;
+    byte[] window = getWindow(position);
+    long blockStart = this.blockSize > 0 ? position - position % this.blockSize : 0;
+    int offset = (int) ((position - blockStart) % this.windowSize);
+    if (offset >= window.length)
+      return -1;
+    int count = Math.min(len, window.length - offset);
+    System.arraycopy(window, offset, b, off, count);
+    return count;
+  }
+  
+  /**
+   * Read exactly len bytes at a position in the file without moving the file pointer
+   * 
+   * @throws EOFException
+   *           if the file ends first
+   */
+  public void readFully(long position, byte[] b, int off, int len) throws IOException {
+    int n = 0;
+    while (n < len) {
+      int count = read(position + n, b, off + n, len - n);
+      if (count < 0)
+        throw new EOFException("Reached the end of " + this.path + " reading " + len + " bytes at " + position);
+      n += count;
+    }
+  }
+  
+  /**
+   * Read bytes at the file pointer and move the file pointer past them
+   */
+  private synchronized int readAtPointer(byte[] b, int off, int len) throws IOException {
+    int count = read(this.pos, b, off, len);
+    if (count > 0)
+      this.pos += count;
+    return count;
+  }
+
+  private synchronized void readFullyAtPointer(byte[] b, int off, int len) throws IOException {
+    readFully(this.pos, b, off, len);
+    this.pos += len;
+  }
+
+  private byte[] readAtPointer(int len) throws IOException {
+    byte[] b = new byte[len];
+    readFullyAtPointer(b, 0, len);
+    return b;
+  }
 
   public void write(int b) throws IOException {
     throw new UnsupportedOperationException();
@@ -77,84 +230,151 @@ public class HdfsReadOnlyRandomAccessContent implements RandomAccessContent {
   }
 
   public void readFully(byte[] b) throws IOException {
-    throw new UnsupportedOperationException();
+    readFullyAtPointer(b, 0, b.length);
   }
 
   public void readFully(byte[] b, int off, int len) throws IOException {
-    throw new UnsupportedOperationException();
+    readFullyAtPointer(b, off, len);
   }
 
-  public int skipBytes(int n) throws IOException {
-    throw new UnsupportedOperationException();
+  public synchronized int skipBytes(int n) throws IOException {
+    if (n <= 0)
+      return 0;
+    long skip = Math.min(n, Math.max(0, length() - this.pos));
+    this.pos += skip;
+    return (int) skip;
   }
 
   public boolean readBoolean() throws IOException {
-    return this.fis.readBoolean();
+    return readByte() != 0;
   }
 
   public byte readByte() throws IOException {
-    return this.fis.readByte();
+    return readAtPointer(1)[0];
   }
 
   public int readUnsignedByte() throws IOException {
-    return this.fis.readUnsignedByte();
+    return readByte() & 0xff;
   }
 
   public short readShort() throws IOException {
-    return this.fis.readShort();
+    byte[] b = readAtPointer(2);
+    return (short) (((b[0] & 0xff) << 8) | (b[1] & 0xff));
   }
 
   public int readUnsignedShort() throws IOException {
-    return this.fis.readUnsignedShort();
+    return readShort() & 0xffff;
   }
 
   public char readChar() throws IOException {
-    return this.fis.readChar();
+    return (char) readShort();
   }
 
   public int readInt() throws IOException {
-    return this.fis.readInt();
+    byte[] b = readAtPointer(4);
+    return ((b[0] & 0xff) << 24) | ((b[1] & 0xff) << 16) | ((b[2] & 0xff) << 8) | (b[3] & 0xff);
   }
 
   public long readLong() throws IOException {
-    return this.fis.readLong();
+    byte[] b = readAtPointer(8);
+    long v = 0;
+    for (int i = 0; i < 8; i++)
+      v = (v << 8) | (b[i] & 0xff);
+    return v;
   }
 
   public float readFloat() throws IOException {
-    return this.fis.readFloat();
+    return Float.intBitsToFloat(readInt());
   }
 
   public double readDouble() throws IOException {
-    return this.fis.readDouble();
-  }
-
-  @SuppressWarnings("deprecation")
-  public String readLine() throws IOException {
-    return this.fis.readLine();
-  }
-
-  public String readUTF() throws IOException {
-    return this.fis.readUTF();
-  }
-
-  public long getFilePointer() throws IOException {
-    return this.fis.getPos();
-  }
-
-  public void seek(long pos) throws IOException {
-    this.fis.seek(pos);
-  }
-
-  public long length() throws IOException {
-    return this.fs.getFileStatus(this.path).getLen();
+    return Double.longBitsToDouble(readLong());
+  }
+
+  /**
+   * Reads a line the way RandomAccessFile does, one byte per character
+   */
+  public synchronized String readLine() throws IOException {
+    StringBuilder line = new StringBuilder();
+    byte[] b = new byte[1];
+    boolean eol = false;
+    while (!eol) {
+      if (readAtPointer(b, 0, 1) < 0) {
+        if (line.length() == 0)
+          return null;
+        break;
+      }
+      switch (b[0]) {
+        case '\n':
+          eol = true;
+          break;
+        case '\r':
+          eol = true;
+          if (read(this.pos, b, 0, 1) == 1 && b[0] == '\n')
+            this.pos++;
+          break;
+        default:
+          line.append((char) (b[0] & 0xff));
+      }
+    }
+    return line.toString();
+  }
+
+  public synchronized String readUTF() throws IOException {
+    return DataInputStream.readUTF(this);
+  }
+
+  public synchronized long getFilePointer() throws IOException {
+    return this.pos;
+  }
+
+  public synchronized void seek(long pos) throws IOException {
+    if (pos < 0)
+      throw new IOException("Negative seek position " + pos);
+    this.pos = pos;
+  }
+
+  public synchronized long length() throws IOException {
+    if (this.length < 0)
+      this.length = this.fs.getFileStatus(this.path).getLen();
+    return this.length;
   }
 
   public void close() throws IOException {
     this.fis.close();
   }
 
+  /**
+   * @return a stream that reads from the file pointer and moves it forward
+   */
   public InputStream getInputStream() throws IOException {
-    return fis;
+    return new InputStream() {
+      @Override
+      public int read() throws IOException {
+        byte[] b = new byte[1];
+        return readAtPointer(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        return readAtPointer(b, off, len);
+      }
+
+      @Override
+      public long skip(long n) throws IOException {
+        return skipBytes((int) Math.min(n, Integer.MAX_VALUE));
+      }
+
+      @Override
+      public int available() throws IOException {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, length() - getFilePointer()));
+      }
+
+      @Override
+      public void close() throws IOException {
+        HdfsReadOnlyRandomAccessContent.this.close();
+      }
+    };
   }
   
 }
@@ -0,0 +1,104 @@
+package org.apache.commons.vfs2.provider;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.ZipException;
+
+/**
+ * A local jar file mapped into memory. Stored entries are returned as slices of the mapping without
+ * copying them, and deflated entries are inflated straight from the mapping into a single array of
+ * the entry's size. Both can be handed to {@link ClassLoader#defineClass(String, ByteBuffer, java.security.ProtectionDomain)}.
+ *
+ * The mapping stays valid after the file is deleted or replaced by a rename, so a jar can be evicted
+ * from the local cache while a classloader is still using it. It does not survive the file being
+ * written in place: truncating it makes reads of the lost pages crash the JVM, and overwriting it
+ * changes the entries under the classloader. Only map files that are never written after they are
+ * created. Jars larger than 2GB are not supported.
+ */
+public class MappedJarFile {
+
+  private final File file;
+  private final MappedByteBuffer buffer;
+  private final ZipDirectory directory;
+
+  public MappedJarFile(File file) throws IOException {
+    this.file = file;
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      long length = channel.size();
+      if (length > Integer.MAX_VALUE)
+        throw new IOException("Unable to map " + file + ", it is larger than 2GB");
+      if (length < ZipDirectory.END_SIZE)
+        throw new ZipException(file + " is not a zip file");
+      this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+    } finally {
+      raf.close();
+    }
+    this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+    int tailLength = (int) Math.min(buffer.capacity(), ZipDirectory.END_SIZE + ZipDirectory.MAX_COMMENT);
+    long[] cd = ZipDirectory.findCentralDirectory(slice(buffer.capacity() - tailLength, tailLength));
+    if (cd[0] + cd[1] > buffer.capacity())
+      throw new ZipException("Bad central directory in " + file);
+    this.directory = ZipDirectory.read(slice((int) cd[0], (int) cd[1]));
+  }
+
+  /**
+   * @return a read only view of part of the mapping, safe to use from any thread
+   */
+  private ByteBuffer slice(int offset, int length) {
+    ByteBuffer buf = buffer.duplicate();
+    buf.limit(offset + length);
+    buf.position(offset);
+    return buf.slice().asReadOnlyBuffer();
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public boolean contains(String name) {
+    return null != directory.get(name);
+  }
+
+  /**
+   * @param name
+   *          entry name, for example "org/apache/accumulo/Foo.class"
+   * @return the bytes of the entry, or null if the jar does not contain it
+   * @throws IOException
+   *           if the entry is corrupt
+   */
+  public ByteBuffer getEntry(String name) throws IOException {
+    ZipDirectory.Entry entry = directory.get(name);
+    if (null == entry)
+      return null;
+    if (entry.headerOffset + ZipDirectory.LOCAL_HEADER_SIZE > buffer.capacity())
+      throw new ZipException("Bad local header offset for " + name + " in " + file);
+    long offset = ZipDirectory.getDataOffset(entry, slice((int) entry.headerOffset, ZipDirectory.LOCAL_HEADER_SIZE));
+    if (offset + entry.compressedSize > buffer.capacity())
+      throw new ZipException("Truncated entry " + name + " in " + file);
+    ByteBuffer data = slice((int) offset, (int) entry.compressedSize);
+    switch (entry.method) {
+      case ZipDirectory.STORED:
+        return data;
+      case ZipDirectory.DEFLATED:
+        return ZipDirectory.inflate(entry, data);
+      default:
+        throw new ZipException("Unsupported compression method " + entry.method + " for " + name + " in " + file);
+    }
+  }
+
+  /**
+   * @return number of file entries in the jar
+   */
+  public int size() {
+    return directory.size();
+  }
+
+}
@@ -0,0 +1,97 @@
+package org.apache.commons.vfs2.provider;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.zip.ZipException;
+
+import org.apache.commons.vfs2.RandomAccessContent;
+
+/**
+ * A jar read in place through random access content. Opening it reads only the central directory,
+ * and each entry is read when it is asked for, so a large jar of which only a few classes are used
+ * is never copied as a whole. With {@link HdfsReadOnlyRandomAccessContent} the reads are positional
+ * and entries can be read by several threads at once.
+ */
+public class RandomAccessJarFile {
+
+  private final RandomAccessContent content;
+  private final long length;
+  private final ZipDirectory directory;
+
+  public RandomAccessJarFile(RandomAccessContent content) throws IOException {
+    this.content = content;
+    this.length = content.length();
+    if (length < ZipDirectory.END_SIZE)
+      throw new ZipException("Not a zip file");
+    int tailLength = (int) Math.min(length, ZipDirectory.END_SIZE + ZipDirectory.MAX_COMMENT);
+    long[] cd = ZipDirectory.findCentralDirectory(read(length - tailLength, tailLength));
+    if (cd[0] + cd[1] > length || cd[1] > Integer.MAX_VALUE)
+      throw new ZipException("Bad central directory");
+    this.directory = ZipDirectory.read(read(cd[0], (int) cd[1]));
+  }
+
+  private ByteBuffer read(long position, int len) throws IOException {
+    byte[] b = new byte[len];
+    if (content instanceof HdfsReadOnlyRandomAccessContent) {
+      ((HdfsReadOnlyRandomAccessContent) content).readFully(position, b, 0, len);
+    } else {
+      synchronized (content) {
+        content.seek(position);
+        content.readFully(b);
+      }
+    }
+    return ByteBuffer.wrap(b);
+  }
+
+  /**
+   * @return names of the file entries in the jar
+   */
+  public Set<String> getNames() {
+    return directory.getNames();
+  }
+
+  public boolean contains(String name) {
+    return null != directory.get(name);
+  }
+
+  /**
+   * @return uncompressed size of an entry, or -1 if the jar does not contain it
+   */
+  public long getSize(String name) {
+    ZipDirectory.Entry entry = directory.get(name);
+    return null == entry ? -1 : entry.size;
+  }
+
+  /**
+   * @param name
+   *          entry name, for example "org/apache/accumulo/Foo.class"
+   * @return the bytes of the entry, or null if the jar does not contain it
+   * @throws IOException
+   *           if the entry is corrupt or can not be read
+   */
+  public ByteBuffer getEntry(String name) throws IOException {
+    ZipDirectory.Entry entry = directory.get(name);
+    if (null == entry)
+      return null;
+    if (entry.headerOffset + ZipDirectory.LOCAL_HEADER_SIZE > length)
+      throw new ZipException("Bad local header offset for " + name);
+    long offset = ZipDirectory.getDataOffset(entry, read(entry.headerOffset, ZipDirectory.LOCAL_HEADER_SIZE));
+    if (offset + entry.compressedSize > length || entry.compressedSize > Integer.MAX_VALUE)
+      throw new ZipException("Truncated entry " + name);
+    ByteBuffer data = read(offset, (int) entry.compressedSize);
+    switch (entry.method) {
+      case ZipDirectory.STORED:
+        return data;
+      case ZipDirectory.DEFLATED:
+        return ZipDirectory.inflate(entry, data);
+      default:
+        throw new ZipException("Unsupported compression method " + entry.method + " for " + name);
+    }
+  }
+
+  public void close() throws IOException {
+    content.close();
+  }
+
+}
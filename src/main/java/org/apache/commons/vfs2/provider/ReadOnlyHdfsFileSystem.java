@@ -1,35 +1,158 @@
 package org.apache.commons.vfs2.provider;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.commons.vfs2.Capability;
 import org.apache.commons.vfs2.FileName;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
 import org.apache.commons.vfs2.FileSystemOptions;
-import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 
 public class ReadOnlyHdfsFileSystem extends AbstractFileSystem {
 
-  private FileSystem fs = null;
+  /**
+   * A FileStatus, or null if the path did not exist, and the time until which it can be reused
+   */
+  private static class CachedStatus {
+    private final FileStatus status;
+    private final long expires;
+    
+    private CachedStatus(FileStatus status, long expires) {
+      this.status = status;
+      this.expires = expires;
+    }
+  }
+  
+  private volatile FileSystem fs = null;
+  // statuses in least recently used order, bounded so that probes for many missing paths do not grow it forever
+  private final Map<Path,CachedStatus> statusCache;
+  private final long statusTtl;
   
   protected ReadOnlyHdfsFileSystem(FileName rootName, FileSystemOptions fileSystemOptions) {
     super(rootName, null, fileSystemOptions);
+    this.statusTtl = HdfsFileSystemConfigBuilder.getInstance().getStatusCacheTtl(fileSystemOptions);
+    final int maxEntries = HdfsFileSystemConfigBuilder.getInstance().getStatusCacheSize(fileSystemOptions);
+    this.statusCache = new LinkedHashMap<Path,CachedStatus>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+      
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Path,CachedStatus> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+  
+  /**
+   * Get the status of a path, reusing a previous answer from the NameNode for the configured time to live
+   * 
+   * @param path
+   * @return the status of the path
+   * @throws FileNotFoundException
+   *           if the path does not exist
+   * @throws IOException
+   */
+  public FileStatus getFileStatus(Path path) throws IOException {
+    if (statusTtl <= 0)
+      return fs.getFileStatus(path);
+    long now = System.currentTimeMillis();
+    CachedStatus cached = null;
+    synchronized (statusCache) {
+      cached = statusCache.get(path);
+      if (null != cached && cached.expires < now) {
+        statusCache.remove(path);
+        cached = null;
+      }
+    }
+    if (null == cached) {
+      // ask the NameNode without holding the lock
+      FileStatus status = null;
+      try {
+        status = fs.getFileStatus(path);
+      } catch (FileNotFoundException e) {
+        // remembered as missing
+      }
+      cached = new CachedStatus(status, now + statusTtl);
+      synchronized (statusCache) {
+        statusCache.put(path, cached);
+      }
+    }
+    if (null == cached.status)
+      throw new FileNotFoundException("File " + path + " does not exist.");
+    return cached.status;
+  }
+  
+  /**
+   * Remember a status that was returned by a directory listing
+   */
+  void putFileStatus(Path path, FileStatus status) {
+    if (statusTtl > 0) {
+      synchronized (statusCache) {
+        statusCache.put(path, new CachedStatus(status, System.currentTimeMillis() + statusTtl));
+      }
+    }
+  }
+  
+  /**
+   * Forget the cached status of a file
+   */
+  public void invalidateFileStatus(FileName name) {
+    synchronized (statusCache) {
+      statusCache.remove(new Path(name.getPath()));
+    }
+  }
+  
+  /**
+   * Forget the cached status of all files
+   */
+  public void invalidateFileStatusCache() {
+    synchronized (statusCache) {
+      statusCache.clear();
+    }
+  }
+  
+  /**
+   * @return number of paths whose status is cached
+   */
+  int getStatusCacheSize() {
+    synchronized (statusCache) {
+      return statusCache.size();
+    }
   }
 
   @Override
   public void close() {
     try {
-      if (null != fs)
-        fs.close();
+      FileSystem client = fs;
+      fs = null;
+      if (null != client)
+        HdfsClientRegistry.release(client);
     } catch (IOException e) {
       throw new RuntimeException("Error closing HDFS client", e);
     }
     super.close();
   }
+  
+  /**
+   * Get the shared DFS client for this file system's NameNode the first time a file is resolved
+   */
+  private synchronized FileSystem connect(FileName name) throws FileSystemException {
+    if (null == this.fs) {
+      String hdfsUri = name.getRootURI();
+      try {
+        this.fs = HdfsClientRegistry.acquire(hdfsUri, getFileSystemOptions());
+      } catch (IOException e) {
+        throw new FileSystemException("Error connecting to filesystem " + hdfsUri, e);
+      }
+    }
+    return this.fs;
+  }
 
   @Override
   protected FileObject createFile(AbstractFileName name) throws Exception {
@@ -43,25 +166,11 @@ public class ReadOnlyHdfsFileSystem extends AbstractFileSystem {
 
   @Override
   public FileObject resolveFile(FileName name) throws FileSystemException {
-    
-    synchronized (this) {
-      if (null == this.fs) {
-        String hdfsUri = name.getRootURI();
-        Configuration conf = new Configuration(false);
-        conf.set(org.apache.hadoop.fs.FileSystem.FS_DEFAULT_NAME_KEY, hdfsUri);
-        this.fs = null;
-        try {
-          fs = org.apache.hadoop.fs.FileSystem.get(conf);
-          
-        } catch (IOException e) {
-          throw new FileSystemException("Error connecting to filesystem " + hdfsUri, e);
-        }
-      }
-    }
-
+    FileSystem client = this.fs;
+    if (null == client)
+      client = connect(name);
     Path filePath = new Path(name.getPath());
-    return new HdfsFileObject((AbstractFileName) name, this, fs, filePath);
-    
+    return new HdfsFileObject((AbstractFileName) name, this, client, filePath);
   }
   
 }
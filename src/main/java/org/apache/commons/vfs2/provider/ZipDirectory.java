@@ -0,0 +1,183 @@
+package org.apache.commons.vfs2.provider;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * The central directory of a zip file, read from raw bytes so that entries can be served from any
+ * kind of storage. Zip64 archives are not supported.
+ */
+class ZipDirectory {
+
+  static final int STORED = 0;
+  static final int DEFLATED = 8;
+
+  static final int END_SIZE = 22;
+  static final int MAX_COMMENT = 0xffff;
+  static final int LOCAL_HEADER_SIZE = 30;
+
+  private static final int END_SIG = 0x06054b50;
+  private static final int CENTRAL_SIG = 0x02014b50;
+  private static final int LOCAL_SIG = 0x04034b50;
+  private static final int CENTRAL_HEADER_SIZE = 46;
+  private static final long MAX_U32 = 0xffffffffL;
+
+  /**
+   * Location of a file entry in the archive
+   */
+  static class Entry {
+    final int method;
+    final long compressedSize;
+    final long size;
+    final long headerOffset;
+
+    private Entry(int method, long compressedSize, long size, long headerOffset) {
+      this.method = method;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.headerOffset = headerOffset;
+    }
+  }
+
+  private final Map<String,Entry> entries;
+
+  private ZipDirectory(Map<String,Entry> entries) {
+    this.entries = entries;
+  }
+
+  /**
+   * Find the central directory from the end of an archive
+   *
+   * @param tail
+   *          the last bytes of the archive, at least {@link #END_SIZE} and at most {@link #END_SIZE} +
+   *          {@link #MAX_COMMENT}
+   * @return offset and size of the central directory
+   * @throws ZipException
+   *           if the end of central directory record is not found
+   */
+  static long[] findCentralDirectory(ByteBuffer tail) throws ZipException {
+    ByteBuffer buf = tail.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    for (int pos = buf.limit() - END_SIZE; pos >= buf.position(); pos--) {
+      if (buf.getInt(pos) == END_SIG) {
+        long size = buf.getInt(pos + 12) & MAX_U32;
+        long offset = buf.getInt(pos + 16) & MAX_U32;
+        if (size == MAX_U32 || offset == MAX_U32)
+          throw new ZipException("Zip64 archives are not supported");
+        return new long[] {offset, size};
+      }
+    }
+    throw new ZipException("End of central directory not found");
+  }
+
+  /**
+   * @param cd
+   *          the bytes of the central directory
+   * @throws ZipException
+   *           if an entry runs past the end of the central directory or is too large
+   */
+  static ZipDirectory read(ByteBuffer cd) throws ZipException {
+    ByteBuffer buf = cd.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    Map<String,Entry> entries = new HashMap<String,Entry>();
+    int pos = buf.position();
+    while (pos + CENTRAL_HEADER_SIZE <= buf.limit() && buf.getInt(pos) == CENTRAL_SIG) {
+      int method = buf.getShort(pos + 10) & 0xffff;
+      long compressedSize = buf.getInt(pos + 20) & MAX_U32;
+      long size = buf.getInt(pos + 24) & MAX_U32;
+      int nameLength = buf.getShort(pos + 28) & 0xffff;
+      int extraLength = buf.getShort(pos + 30) & 0xffff;
+      int commentLength = buf.getShort(pos + 32) & 0xffff;
+      long headerOffset = buf.getInt(pos + 42) & MAX_U32;
+      if (compressedSize == MAX_U32 || size == MAX_U32 || headerOffset == MAX_U32)
+        throw new ZipException("Zip64 archives are not supported");
+      if (size > Integer.MAX_VALUE || compressedSize > Integer.MAX_VALUE)
+        throw new ZipException("Entry larger than 2GB at " + pos + " of the central directory");
+      if (pos + CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength > buf.limit())
+        throw new ZipException("Truncated central directory, entry at " + pos + " ends past its end");
+      byte[] name = new byte[nameLength];
+      ByteBuffer nameBuf = buf.duplicate();
+      nameBuf.position(pos + CENTRAL_HEADER_SIZE);
+      nameBuf.get(name);
+      String entryName = decode(name);
+      if (!entryName.endsWith("/"))
+        entries.put(entryName, new Entry(method, compressedSize, size, headerOffset));
+      pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+    }
+    return new ZipDirectory(entries);
+  }
+
+  private static String decode(byte[] name) {
+    try {
+      return new String(name, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @param header
+   *          the {@link #LOCAL_HEADER_SIZE} bytes of the entry's local header
+   * @return offset of the entry's data in the archive
+   */
+  static long getDataOffset(Entry entry, ByteBuffer header) throws ZipException {
+    ByteBuffer buf = header.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int pos = buf.position();
+    if (buf.remaining() < LOCAL_HEADER_SIZE || buf.getInt(pos) != LOCAL_SIG)
+      throw new ZipException("Bad local header at " + entry.headerOffset);
+    int nameLength = buf.getShort(pos + 26) & 0xffff;
+    int extraLength = buf.getShort(pos + 28) & 0xffff;
+    return entry.headerOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+  }
+
+  /**
+   * Inflate the data of a deflated entry
+   *
+   * @param data
+   *          the compressed bytes of the entry
+   * @return the uncompressed bytes
+   */
+  static ByteBuffer inflate(Entry entry, ByteBuffer data) throws ZipException {
+    // the inflater needs an array and, for raw deflate data, an extra dummy byte at the end
+    byte[] input = new byte[data.remaining() + 1];
+    data.duplicate().get(input, 0, input.length - 1);
+    byte[] output = new byte[(int) entry.size];
+    Inflater inflater = new Inflater(true);
+    try {
+      inflater.setInput(input);
+      int n = 0;
+      while (n < output.length) {
+        int count = inflater.inflate(output, n, output.length - n);
+        if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+          throw new ZipException("Truncated entry, expected " + output.length + " bytes but got " + n);
+        n += count;
+      }
+    } catch (DataFormatException e) {
+      ZipException ze = new ZipException("Corrupt entry");
+      ze.initCause(e);
+      throw ze;
+    } finally {
+      inflater.end();
+    }
+    return ByteBuffer.wrap(output);
+  }
+
+  Entry get(String name) {
+    return entries.get(name);
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  Set<String> getNames() {
+    return Collections.unmodifiableSet(entries.keySet());
+  }
+
+}
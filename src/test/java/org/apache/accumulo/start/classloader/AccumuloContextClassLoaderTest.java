@@ -1,7 +1,11 @@
 package org.apache.accumulo.start.classloader;
 
+import java.lang.management.ManagementFactory;
 import java.net.URL;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.apache.commons.vfs2.CacheStrategy;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.cache.DefaultFilesCache;
@@ -117,6 +121,88 @@ public class AccumuloContextClassLoaderTest {
 
   }
   
+  @Test
+  public void lazyContexts() throws Exception {
+    FileObject testDir = vfs.resolveFile(TEST_DIR.toUri().toString());
+    cl = new AccumuloContextClassLoader(testDir.getChildren(), vfs, ClassLoader.getSystemClassLoader());
+    
+    //The classloader of a registered context is built when it is first used
+    cl.registerContext("MYCONTEXT", new String[] {new Path(TEST_DIR2, "HelloWorld.jar").toUri().toString()}, null, 0, 0);
+    Assert.assertFalse(cl.isLoaded("MYCONTEXT"));
+    Class<?> myContextClass = cl.loadClass("MYCONTEXT", "test.HelloWorld");
+    Assert.assertEquals("Hello World!", myContextClass.newInstance().toString());
+    Assert.assertTrue(cl.isLoaded("MYCONTEXT"));
+    
+    //A context that keeps being used is not idle
+    cl.setIdleTimeout(100);
+    for (int i = 0; i < 15; i++) {
+      cl.loadClass("MYCONTEXT", "test.HelloWorld");
+      Thread.sleep(20);
+    }
+    Assert.assertTrue(cl.isLoaded("MYCONTEXT"));
+    
+    //Idle contexts are closed in the background, and built again on demand
+    Thread.sleep(300);
+    Assert.assertFalse(cl.isLoaded("MYCONTEXT"));
+    Assert.assertTrue(cl.isLoaded(AccumuloContextClassLoader.DEFAULT_CONTEXT));
+    Assert.assertEquals("Hello World!", cl.loadClass("MYCONTEXT", "test.HelloWorld").newInstance().toString());
+    Assert.assertTrue(cl.isLoaded("MYCONTEXT"));
+  }
+  
+  @Test
+  public void boundedContexts() throws Exception {
+    FileObject testDir = vfs.resolveFile(TEST_DIR.toUri().toString());
+    cl = new AccumuloContextClassLoader(testDir.getChildren(), vfs, ClassLoader.getSystemClassLoader());
+    cl.setMaxLoadedContexts(1);
+    String jar = new Path(TEST_DIR2, "HelloWorld.jar").toUri().toString();
+    cl.registerContext("CONTEXT1", new String[] {jar}, null, 0, 0);
+    cl.registerContext("CONTEXT2", new String[] {jar}, null, 0, 0);
+    
+    //Building a second context closes the least recently used one
+    cl.loadClass("CONTEXT1", "test.HelloWorld");
+    Assert.assertTrue(cl.isLoaded("CONTEXT1"));
+    Thread.sleep(10);
+    cl.loadClass("CONTEXT2", "test.HelloWorld");
+    Assert.assertFalse(cl.isLoaded("CONTEXT1"));
+    Assert.assertTrue(cl.isLoaded("CONTEXT2"));
+    Assert.assertTrue(cl.isLoaded(AccumuloContextClassLoader.DEFAULT_CONTEXT));
+    
+    //A limit on defined classes counts the default context, but never closes it
+    cl.setMaxLoadedContexts(0);
+    cl.setMaxDefinedClasses(1);
+    cl.loadClass("test.HelloWorld");
+    Thread.sleep(10);
+    cl.loadClass("CONTEXT1", "test.HelloWorld");
+    Assert.assertTrue(cl.isLoaded("CONTEXT1"));
+    Assert.assertFalse(cl.isLoaded("CONTEXT2"));
+  }
+  
+  @Test
+  public void contextMetrics() throws Exception {
+    FileObject testDir = vfs.resolveFile(TEST_DIR.toUri().toString());
+    cl = new AccumuloContextClassLoader(testDir.getChildren(), vfs, ClassLoader.getSystemClassLoader());
+    cl.setMetricsDomain("test.metrics");
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName defaultName = new ObjectName("test.metrics:type=ClassLoaderMetrics,context=" + ObjectName.quote(AccumuloContextClassLoader.DEFAULT_CONTEXT));
+    ObjectName myName = new ObjectName("test.metrics:type=ClassLoaderMetrics,context=" + ObjectName.quote("MYCONTEXT"));
+    ObjectName lazyName = new ObjectName("test.metrics:type=ClassLoaderMetrics,context=" + ObjectName.quote("LAZYCONTEXT"));
+    Assert.assertTrue(server.isRegistered(defaultName));
+    
+    //Contexts added after the domain was set are registered, and unregistered when removed
+    FileObject testDir2 = vfs.resolveFile(TEST_DIR2.toUri().toString());
+    cl.addContext("MYCONTEXT", testDir2.getChildren());
+    cl.registerContext("LAZYCONTEXT", new String[] {new Path(TEST_DIR2, "HelloWorld.jar").toUri().toString()}, null, 0, 0);
+    Assert.assertTrue(server.isRegistered(myName));
+    Assert.assertTrue(server.isRegistered(lazyName));
+    cl.removeContext("MYCONTEXT");
+    Assert.assertFalse(server.isRegistered(myName));
+    
+    //Closing unregisters the rest
+    cl.close();
+    Assert.assertFalse(server.isRegistered(defaultName));
+    Assert.assertFalse(server.isRegistered(lazyName));
+  }
+  
   @After
   public void tearDown() throws Exception {
     cl.close();
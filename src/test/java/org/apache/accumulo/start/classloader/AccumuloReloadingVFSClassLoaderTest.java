@@ -1,8 +1,10 @@
 package org.apache.accumulo.start.classloader;
 
 import java.net.URL;
+import java.util.Collections;
 
 import org.apache.commons.vfs2.CacheStrategy;
+import org.apache.commons.vfs2.FileChangeEvent;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.cache.DefaultFilesCache;
 import org.apache.commons.vfs2.cache.SoftRefFilesCache;
@@ -111,6 +113,7 @@ public class AccumuloReloadingVFSClassLoaderTest {
     //Check that the class is the same before the update
     Class<?> clazz1_5 = cl.loadClass("test.HelloWorld");
     Assert.assertEquals(clazz1, clazz1_5);
+    long generation = cl.getGeneration();
     
     //Update the class
     URL jarPath = this.getClass().getResource("/HelloWorld.jar");
@@ -121,6 +124,7 @@ public class AccumuloReloadingVFSClassLoaderTest {
     //Wait for the monitor to notice
     Thread.sleep(4000);
     
+    Assert.assertTrue(cl.getGeneration() > generation);
     Class<?> clazz2 = cl.loadClass("test.HelloWorld");
     Object o2 = clazz2.newInstance();
     Assert.assertEquals("Hello World!", o2.toString());
@@ -131,6 +135,153 @@ public class AccumuloReloadingVFSClassLoaderTest {
     
   }
   
+  @Test
+  public void testMissingClassAndResource() throws Exception {
+    FileObject testDir = vfs.resolveFile(TEST_DIR.toUri().toString());
+    FileObject[] dirContents = testDir.getChildren();
+    cl = new AccumuloReloadingVFSClassLoader(dirContents, vfs, ClassLoader.getSystemClassLoader());
+    
+    //The second lookup of each is answered by the miss cache and must behave the same
+    for (int i = 0; i < 2; i++) {
+      try {
+        cl.loadClass("test.DoesNotExist");
+        Assert.fail("Expected ClassNotFoundException");
+      } catch (ClassNotFoundException e) {
+        //expected
+      }
+      Assert.assertNull(cl.getResource("test/DoesNotExist.properties"));
+      Assert.assertNull(cl.getResourceAsStream("test/DoesNotExist.properties"));
+      Assert.assertFalse(cl.getResources("test/DoesNotExist.properties").hasMoreElements());
+    }
+    
+    Assert.assertNotNull(cl.loadClass("test.HelloWorld"));
+    Assert.assertNotNull(cl.getResource("test/HelloWorld.class"));
+  }
+  
+  @Test
+  public void testCoalescedReload() throws Exception {
+    FileObject testDir = vfs.resolveFile(TEST_DIR.toUri().toString());
+    FileObject[] dirContents = testDir.getChildren();
+    cl = new AccumuloReloadingVFSClassLoader(dirContents, vfs, ClassLoader.getSystemClassLoader());
+    cl.setReloadQuietPeriod(1000);
+    long generation = cl.getGeneration();
+    
+    //A burst of events inside the quiet period results in a single reload
+    for (int i = 0; i < 5; i++)
+      cl.fileChanged(new FileChangeEvent(dirContents[0]));
+    Assert.assertEquals(generation, cl.getGeneration());
+    
+    Thread.sleep(3000);
+    Assert.assertEquals(1, cl.getReloadCount());
+    Assert.assertEquals(5, cl.getLastReloadEventCount());
+    Assert.assertEquals(generation + 1, cl.getGeneration());
+    Assert.assertNotNull(cl.loadClass("test.HelloWorld"));
+  }
+  
+  @Test
+  public void testMetrics() throws Exception {
+    FileObject testDir = vfs.resolveFile(TEST_DIR.toUri().toString());
+    FileObject[] dirContents = testDir.getChildren();
+    cl = new AccumuloReloadingVFSClassLoader(dirContents, vfs, ClassLoader.getSystemClassLoader());
+    cl.setReloadQuietPeriod(0);
+    ClassLoaderMetrics metrics = cl.getMetrics();
+    long size = dirContents[0].getContent().getSize();
+    Assert.assertEquals(size, metrics.getBytesReplicated());
+    
+    //The first lookup searches the jar, the second is answered from the cache
+    cl.loadClass("test.HelloWorld");
+    cl.loadClass("test.HelloWorld");
+    Assert.assertEquals(1, metrics.getLoadClassMisses());
+    Assert.assertEquals(1, metrics.getLoadClassHits());
+    Assert.assertTrue(metrics.getLookupTimeMean() > 0);
+    
+    //A reload takes the lock and copies the changed jar again
+    cl.fileChanged(new FileChangeEvent(dirContents[0]));
+    Assert.assertEquals(1, metrics.getReloads());
+    Assert.assertEquals(1, metrics.getLockAcquisitions());
+    Assert.assertEquals(2 * size, metrics.getBytesReplicated());
+    Assert.assertTrue(metrics.getReloadTimeMax() >= metrics.getReloadTimeMean());
+  }
+  
+  @Test
+  public void testPrewarm() throws Exception {
+    FileObject testDir = vfs.resolveFile(TEST_DIR.toUri().toString());
+    FileObject[] dirContents = testDir.getChildren();
+    cl = new AccumuloReloadingVFSClassLoader(dirContents, vfs, ClassLoader.getSystemClassLoader());
+    cl.setReloadQuietPeriod(0);
+    cl.setPrewarm(true);
+    
+    //Classes resolved through the current delegate are loaded into the next one before the swap
+    cl.loadClass("test.HelloWorld");
+    long generation = cl.getGeneration();
+    cl.fileChanged(new FileChangeEvent(dirContents[0]));
+    Assert.assertEquals(generation + 1, cl.getGeneration());
+    Assert.assertTrue(cl.isResolved("test.HelloWorld"));
+    Assert.assertEquals(1, cl.getDefinedClassCount());
+    
+    //Configured classes are loaded even if they were never asked for
+    cl.setPrewarmClasses(Collections.singleton("java.lang.String"));
+    Assert.assertFalse(cl.isResolved("java.lang.String"));
+    cl.fileChanged(new FileChangeEvent(dirContents[0]));
+    Assert.assertEquals(generation + 2, cl.getGeneration());
+    Assert.assertTrue(cl.isResolved("java.lang.String"));
+    Assert.assertTrue(cl.isResolved("test.HelloWorld"));
+    
+    //The first lookup after the swap is answered from the cache
+    long misses = cl.getMetrics().getLoadClassMisses();
+    cl.loadClass("test.HelloWorld");
+    Assert.assertEquals(misses, cl.getMetrics().getLoadClassMisses());
+  }
+  
+  @Test
+  public void testUnchangedArchiveSurvivesReload() throws Exception {
+    //Add a second jar next to the first
+    URL jarPath = this.getClass().getResource("/HelloWorld.jar");
+    Path src = new Path(jarPath.toURI().toString());
+    this.hdfs.copyFromLocalFile(src, new Path(TEST_DIR, "HelloWorld2.jar"));
+    
+    FileObject testDir = vfs.resolveFile(TEST_DIR.toUri().toString());
+    FileObject[] dirContents = testDir.getChildren();
+    Assert.assertEquals(2, dirContents.length);
+    cl = new AccumuloReloadingVFSClassLoader(dirContents, vfs, ClassLoader.getSystemClassLoader());
+    cl.setReloadQuietPeriod(0);
+    String changed = dirContents[0].getName().getURI();
+    String sibling = dirContents[1].getName().getURI();
+    FileObject changedArchive = cl.getArchive(changed);
+    FileObject siblingArchive = cl.getArchive(sibling);
+    Assert.assertNotNull(changedArchive);
+    Assert.assertNotNull(siblingArchive);
+    Class<?> clazz1 = cl.loadClass("test.HelloWorld");
+    
+    //Only the archive named in the event is opened again
+    cl.fileChanged(new FileChangeEvent(dirContents[0]));
+    Assert.assertNotSame(changedArchive, cl.getArchive(changed));
+    Assert.assertNotSame(changedArchive.getFileSystem(), cl.getArchive(changed).getFileSystem());
+    Assert.assertSame(siblingArchive, cl.getArchive(sibling));
+    
+    //The replaced archive stays open while a class of the previous generation can reach it
+    Assert.assertEquals(1, cl.getRetiredArchiveCount());
+    Assert.assertNotNull(clazz1.getClassLoader().getResource("test/HelloWorld.class"));
+  }
+  
+  @Test
+  public void testCloseRetiresArchives() throws Exception {
+    FileObject testDir = vfs.resolveFile(TEST_DIR.toUri().toString());
+    FileObject[] dirContents = testDir.getChildren();
+    cl = new AccumuloReloadingVFSClassLoader(dirContents, vfs, ClassLoader.getSystemClassLoader());
+    String uri = dirContents[0].getName().getURI();
+    Assert.assertNotNull(cl.getArchive(uri));
+    Class<?> clazz = cl.loadClass("test.HelloWorld");
+    
+    //The archive of the current delegate is retired, and stays open while its classes are reachable
+    cl.close();
+    Assert.assertNull(cl.getArchive(uri));
+    Assert.assertEquals(1, cl.getRetiredArchiveCount());
+    AccumuloReloadingVFSClassLoader.closeOrphans();
+    Assert.assertEquals(1, cl.getRetiredArchiveCount());
+    Assert.assertNotNull(clazz.getClassLoader().getResource("test/HelloWorld.class"));
+  }
+  
   @After
   public void tearDown() throws Exception {
     cl.close();
@@ -0,0 +1,150 @@
+package org.apache.accumulo.start.classloader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.vfs2.FileListener;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemOptions;
+import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AccumuloVFSClassLoaderTest {
+
+  private DefaultFileSystemManager vfs = null;
+  private RecordingScheduler scheduler = null;
+  private RecordingDetector monitor = null;
+  private String jar = null;
+
+  /**
+   * Records the classloaders that are watching their classpath
+   */
+  private static class RecordingDetector implements ClasspathChangeDetector {
+    private final Set<FileListener> watching = Collections.synchronizedSet(new HashSet<FileListener>());
+    private final AtomicInteger watches = new AtomicInteger(0);
+
+    public void watch(FileObject[] files, FileListener listener, long interval, long maxInterval) {
+      watches.incrementAndGet();
+      watching.add(listener);
+    }
+
+    public void unwatch(FileListener listener) {
+      watching.remove(listener);
+    }
+  }
+
+  /**
+   * Records the tasks scheduled on it
+   */
+  private static class RecordingScheduler extends ClasspathMonitorScheduler {
+    private final List<ScheduledFuture<?>> scheduled = Collections.synchronizedList(new ArrayList<ScheduledFuture<?>>());
+
+    private RecordingScheduler() {
+      super(1);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable task, long delay) {
+      ScheduledFuture<?> future = super.schedule(task, delay);
+      scheduled.add(future);
+      return future;
+    }
+  }
+
+  @Before
+  public void setup() throws Exception {
+    Logger.getRootLogger().setLevel(Level.ERROR);
+
+    vfs = new DefaultFileSystemManager();
+    vfs.addProvider("file", new org.apache.commons.vfs2.provider.local.DefaultLocalFileProvider());
+    vfs.addProvider("jar", new org.apache.commons.vfs2.provider.jar.JarFileProvider());
+    vfs.addExtensionMap("jar", "jar");
+    vfs.init();
+    scheduler = new RecordingScheduler();
+    monitor = new RecordingDetector();
+    jar = this.getClass().getResource("/HelloWorld.jar").toString();
+  }
+
+  private Configuration getConfiguration(String... contexts) {
+    Configuration conf = new Configuration(false);
+    conf.set(AccumuloVFSClassLoader.DEFAULT_CLASSPATH_PROPERTY, jar);
+    StringBuilder names = new StringBuilder();
+    for (String context : contexts) {
+      if (names.length() > 0)
+        names.append(",");
+      names.append(context);
+      conf.set(context + AccumuloVFSClassLoader.CONTEXT_CLASSPATH_PROPERTY, jar);
+    }
+    conf.set(AccumuloVFSClassLoader.CONTEXT_NAMES_PROPERTY, names.toString());
+    conf.setInt(AccumuloVFSClassLoader.CONTEXT_INIT_THREADS_PROPERTY, 4);
+    return conf;
+  }
+
+  private AccumuloContextClassLoader create(Configuration conf) throws IOException {
+    return AccumuloVFSClassLoader.createContextLoader(conf, vfs, ClassLoader.getSystemClassLoader(), new FileSystemOptions(), scheduler, monitor);
+  }
+
+  @Test
+  public void testParallelInit() throws Exception {
+    AccumuloContextClassLoader cl = create(getConfiguration("A", "B", "C", "D", "E"));
+    Assert.assertEquals(6, monitor.watches.get());
+    for (String context : new String[] {"A", "B", "C", "D", "E"}) {
+      Assert.assertTrue(cl.isLoaded(context));
+      Assert.assertEquals("Hello World!", cl.loadClass(context, "test.HelloWorld").newInstance().toString());
+    }
+    cl.close();
+    Assert.assertTrue(monitor.watching.isEmpty());
+  }
+
+  @Test
+  public void testLazyInit() throws Exception {
+    Configuration conf = getConfiguration("A", "B");
+    conf.setBoolean(AccumuloVFSClassLoader.CONTEXT_LAZY_PROPERTY, true);
+    AccumuloContextClassLoader cl = create(conf);
+    Assert.assertEquals(1, monitor.watches.get());
+    Assert.assertFalse(cl.isLoaded("A"));
+    Assert.assertNotNull(cl.loadClass("A", "test.HelloWorld"));
+    Assert.assertTrue(cl.isLoaded("A"));
+    Assert.assertFalse(cl.isLoaded("B"));
+    cl.close();
+  }
+
+  @Test
+  public void testFailedInitClosesBuiltContexts() throws Exception {
+    Configuration conf = getConfiguration("A", "B", "BAD", "C", "D");
+    conf.set("BAD" + AccumuloVFSClassLoader.CONTEXT_CLASSPATH_PROPERTY, "nosuchscheme://localhost/HelloWorld.jar");
+    conf.setLong(AccumuloVFSClassLoader.CONTEXT_IDLE_TIMEOUT_PROPERTY, 60 * 1000);
+    try {
+      create(conf);
+      Assert.fail("Expected IOException");
+    } catch (IOException e) {
+      // expected
+    }
+    // Whatever was built before the failure, and whatever was still being built, is closed
+    Assert.assertTrue(monitor.watches.get() > 0);
+    Assert.assertTrue(monitor.watching.isEmpty());
+    // The idle sweep was started before the failure and is stopped again
+    Assert.assertFalse(scheduler.scheduled.isEmpty());
+    for (ScheduledFuture<?> future : scheduler.scheduled)
+      Assert.assertTrue(future.isCancelled());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    scheduler.close();
+    vfs.close();
+  }
+
+}
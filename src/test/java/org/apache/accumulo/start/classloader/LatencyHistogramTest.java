@@ -0,0 +1,58 @@
+package org.apache.accumulo.start.classloader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testBuckets() {
+    Assert.assertEquals(0, LatencyHistogram.bucket(0));
+    Assert.assertEquals(0, LatencyHistogram.bucket(1));
+    Assert.assertEquals(1, LatencyHistogram.bucket(2));
+    Assert.assertEquals(1, LatencyHistogram.bucket(3));
+    Assert.assertEquals(10, LatencyHistogram.bucket(1024));
+    Assert.assertEquals(62, LatencyHistogram.bucket(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Assert.assertEquals(0, histogram.getMean());
+    Assert.assertEquals(0, histogram.getPercentile(99));
+    for (int i = 0; i < 99; i++)
+      histogram.record(100);
+    histogram.record(10000);
+    Assert.assertEquals(100, histogram.getCount());
+    Assert.assertEquals(99 * 100 + 10000, histogram.getTotal());
+    Assert.assertEquals((99 * 100 + 10000) / 100, histogram.getMean());
+    //100 falls in [64, 128) and 10000 in [8192, 16384)
+    Assert.assertEquals(127, histogram.getPercentile(50));
+    Assert.assertEquals(127, histogram.getPercentile(99));
+    Assert.assertEquals(16383, histogram.getPercentile(100));
+  }
+
+  @Test
+  public void testConcurrentCounts() throws Exception {
+    final StripedCounter counter = new StripedCounter();
+    final LatencyHistogram histogram = new LatencyHistogram();
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 10000; j++) {
+            counter.increment();
+            histogram.record(j);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread t : threads)
+      t.join();
+    Assert.assertEquals(80000, counter.get());
+    Assert.assertEquals(80000, histogram.getCount());
+  }
+
+}
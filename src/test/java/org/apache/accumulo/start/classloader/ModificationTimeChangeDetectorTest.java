@@ -0,0 +1,181 @@
+package org.apache.accumulo.start.classloader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
+import org.apache.commons.vfs2.provider.VfsClassLoaderTest.MyFileMonitor;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Uses a local directory as a stand-in for an HDFS classpath directory
+ */
+public class ModificationTimeChangeDetectorTest {
+
+  private static final String MARKER = ".classpath-updated";
+
+  private DefaultFileSystemManager vfs = null;
+  private ModificationTimeChangeDetector detector = null;
+  private File dir = null;
+
+  @Before
+  public void setup() throws Exception {
+    Logger.getRootLogger().setLevel(Level.ERROR);
+
+    vfs = new DefaultFileSystemManager();
+    vfs.addProvider("file", new org.apache.commons.vfs2.provider.local.DefaultLocalFileProvider());
+    vfs.init();
+
+    dir = File.createTempFile("classpath", "");
+    dir.delete();
+    dir.mkdirs();
+    touch(new File(dir, "a.jar"), dir.lastModified() - 10000);
+    dir.setLastModified(dir.lastModified() - 10000);
+  }
+
+  private static void touch(File file, long modified) throws Exception {
+    new FileOutputStream(file, true).close();
+    file.setLastModified(modified);
+  }
+
+  private FileObject[] watch(MyFileMonitor listener) throws Exception {
+    FileObject[] files = new FileObject[] {vfs.resolveFile(dir.toURI().toString())};
+    detector.watch(files, listener, 0, 0);
+    return files;
+  }
+
+  @Test
+  public void testDirectoryModificationTime() throws Exception {
+    detector = new ModificationTimeChangeDetector(100, null);
+    MyFileMonitor listener = new MyFileMonitor();
+    watch(listener);
+
+    Thread.sleep(500);
+    Assert.assertFalse(listener.isFileCreated());
+
+    // Creating a file updates the modification time of its directory
+    touch(new File(dir, "b.jar"), System.currentTimeMillis());
+    dir.setLastModified(System.currentTimeMillis());
+    Thread.sleep(500);
+    Assert.assertTrue(listener.isFileCreated());
+
+    new File(dir, "a.jar").delete();
+    dir.setLastModified(System.currentTimeMillis() + 1000);
+    Thread.sleep(500);
+    Assert.assertTrue(listener.isFileDeleted());
+  }
+
+  @Test
+  public void testUnchangedDirectoryIsNotListed() throws Exception {
+    detector = new ModificationTimeChangeDetector(100, null);
+    MyFileMonitor listener = new MyFileMonitor();
+    watch(listener);
+
+    // A change that leaves the directory alone is not seen without a marker
+    long modified = dir.lastModified();
+    touch(new File(dir, "a.jar"), System.currentTimeMillis());
+    dir.setLastModified(modified);
+    Thread.sleep(500);
+    Assert.assertFalse(listener.isFileChanged());
+  }
+
+  @Test
+  public void testMarker() throws Exception {
+    File marker = new File(dir, MARKER);
+    touch(marker, System.currentTimeMillis() - 10000);
+    detector = new ModificationTimeChangeDetector(100, MARKER);
+    MyFileMonitor listener = new MyFileMonitor();
+    watch(listener);
+
+    long modified = dir.lastModified();
+    touch(new File(dir, "a.jar"), System.currentTimeMillis());
+    dir.setLastModified(modified);
+    Thread.sleep(500);
+    Assert.assertFalse(listener.isFileChanged());
+
+    // Touching the marker makes the detector compare the whole directory
+    marker.setLastModified(System.currentTimeMillis());
+    Thread.sleep(500);
+    Assert.assertTrue(listener.isFileChanged());
+  }
+
+  @Test
+  public void testFullScanNestedDirectory() throws Exception {
+    File nested = new File(dir, "lib");
+    nested.mkdirs();
+    touch(new File(nested, "c.jar"), System.currentTimeMillis() - 10000);
+    detector = new FullScanChangeDetector(ClasspathMonitorScheduler.getInstance(), 100);
+    MyFileMonitor listener = new MyFileMonitor();
+    watch(listener);
+
+    Thread.sleep(500);
+    Assert.assertFalse(listener.isFileCreated());
+
+    // Files added to and removed from a directory below the watched one are found
+    touch(new File(nested, "d.jar"), System.currentTimeMillis());
+    Thread.sleep(500);
+    Assert.assertTrue(listener.isFileCreated());
+
+    new File(nested, "c.jar").delete();
+    Thread.sleep(500);
+    Assert.assertTrue(listener.isFileDeleted());
+  }
+
+  /**
+   * Counts the checks of its watch
+   */
+  private static class PollCounter extends MyFileMonitor implements ClasspathChangeDetector.PollListener {
+    private final AtomicInteger polls = new AtomicInteger(0);
+
+    public void polled(long nanos) {
+      polls.incrementAndGet();
+    }
+  }
+
+  @Test
+  public void testAdaptiveInterval() throws Exception {
+    detector = new ModificationTimeChangeDetector(100, null);
+    PollCounter listener = new PollCounter();
+    detector.watch(new FileObject[] {vfs.resolveFile(dir.toURI().toString())}, listener, 20, 640);
+
+    // While nothing changes the interval doubles up to the maximum, polling every 20ms would check 75 times
+    Thread.sleep(1500);
+    Assert.assertTrue(listener.polls.get() < 15);
+    int polls = listener.polls.get();
+    Thread.sleep(500);
+    Assert.assertTrue(listener.polls.get() - polls <= 1);
+
+    // A change brings the interval back down
+    touch(new File(dir, "b.jar"), System.currentTimeMillis());
+    dir.setLastModified(System.currentTimeMillis());
+    for (int i = 0; i < 200 && !listener.isFileCreated(); i++)
+      Thread.sleep(10);
+    Assert.assertTrue(listener.isFileCreated());
+    polls = listener.polls.get();
+    Thread.sleep(300);
+    Assert.assertTrue(listener.polls.get() - polls >= 2);
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (null != children)
+      for (File child : children)
+        delete(child);
+    file.delete();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    detector.close();
+    delete(dir);
+    vfs.close();
+  }
+
+}
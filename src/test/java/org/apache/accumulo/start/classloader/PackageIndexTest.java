@@ -0,0 +1,109 @@
+package org.apache.accumulo.start.classloader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PackageIndexTest {
+
+  private File dir = null;
+  private DefaultFileSystemManager vfs = null;
+
+  @Before
+  public void setup() throws Exception {
+    dir = File.createTempFile("package-index", "");
+    dir.delete();
+    dir.mkdirs();
+    vfs = new DefaultFileSystemManager();
+    vfs.addProvider("file", new org.apache.commons.vfs2.provider.local.DefaultLocalFileProvider());
+    vfs.addProvider("jar", new org.apache.commons.vfs2.provider.jar.JarFileProvider());
+    vfs.addExtensionMap("jar", "jar");
+    vfs.init();
+  }
+
+  private static void writeJar(File file, String... entries) throws Exception {
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+    for (String entry : entries) {
+      out.putNextEntry(new ZipEntry(entry));
+      out.write(1);
+      out.closeEntry();
+    }
+    out.close();
+  }
+
+  private FileObject open(File file) throws Exception {
+    FileObject fo = vfs.resolveFile(file.toURI().toString());
+    fo.refresh();
+    return vfs.createFileSystem(fo);
+  }
+
+  @Test
+  public void testRoots() throws Exception {
+    File classes = new File(dir, "classes");
+    classes.mkdirs();
+    writeJar(new File(dir, "a.jar"), "a/A.class");
+    writeJar(new File(dir, "b.jar"), "a/B.class", "b/B.class");
+    FileObject folder = vfs.resolveFile(classes.toURI().toString());
+    FileObject a = open(new File(dir, "a.jar"));
+    FileObject b = open(new File(dir, "b.jar"));
+    PackageIndex index = PackageIndex.build(new FileObject[] {a, folder, b}, null, Collections.<String> emptySet());
+
+    //Roots are returned in search order, with the directory searched for every package
+    Assert.assertEquals(Arrays.asList(a, folder, b), index.getRoots("a/A.class"));
+    Assert.assertEquals(Arrays.asList(folder, b), index.getRoots("b/B.class"));
+    Assert.assertEquals(Arrays.asList(folder), index.getRoots("c/C.class"));
+  }
+
+  @Test
+  public void testIncrementalBuild() throws Exception {
+    File aFile = new File(dir, "a.jar");
+    File bFile = new File(dir, "b.jar");
+    writeJar(aFile, "a/A.class");
+    writeJar(bFile, "b/B.class");
+    FileObject a = open(aFile);
+    FileObject b = open(bFile);
+    PackageIndex previous = PackageIndex.build(new FileObject[] {a, b}, null, Collections.<String> emptySet());
+
+    //Replace a.jar and open it again
+    writeJar(aFile, "c/C.class");
+    vfs.closeFileSystem(a.getFileSystem());
+    FileObject a2 = open(aFile);
+
+    //Also rewrite b.jar and open it again without marking it as changed, its previous entries must be kept
+    writeJar(bFile, "d/D.class");
+    vfs.closeFileSystem(b.getFileSystem());
+    FileObject b2 = open(bFile);
+
+    String aUri = vfs.resolveFile(aFile.toURI().toString()).getName().getURI();
+    PackageIndex index = PackageIndex.build(new FileObject[] {a2, b2}, previous, Collections.singleton(aUri));
+    Assert.assertTrue(index.getRoots("a/A.class").isEmpty());
+    Assert.assertEquals(Arrays.asList(a2), index.getRoots("c/C.class"));
+    Assert.assertEquals(Arrays.asList(b2), index.getRoots("b/B.class"));
+    Assert.assertTrue(index.getRoots("d/D.class").isEmpty());
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (null != children)
+      for (File child : children)
+        delete(child);
+    file.delete();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    vfs.close();
+    delete(dir);
+  }
+
+}
@@ -0,0 +1,142 @@
+package org.apache.commons.vfs2.provider;
+
+import java.io.File;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.Selectors;
+import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CachingHdfsFileReplicatorTest {
+
+  private static final String HDFS_URI = "hdfs://localhost:8020";
+  private static final Path DIR1_PATH = new Path("/test-dir");
+  private static final Path FILE1_PATH = new Path(DIR1_PATH, "accumulo-test-1.jar");
+  private static final Path FILE2_PATH = new Path(DIR1_PATH, "accumulo-test-2.jar");
+
+  private static MiniDFSCluster cluster = null;
+  private static Configuration conf = null;
+
+  private DefaultFileSystemManager manager = null;
+  private FileSystem hdfs = null;
+  private File cacheDir = null;
+
+  @BeforeClass
+  public static void start() throws Exception {
+    Logger.getRootLogger().setLevel(Level.ERROR);
+
+    //Setup HDFS
+    conf = new Configuration();
+    conf.set(FileSystem.FS_DEFAULT_NAME_KEY, HDFS_URI);
+    conf.set("hadoop.security.token.service.use_ip", "true");
+    conf.set("dfs.datanode.data.dir.perm", "775");
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 1024 * 100); //100K blocksize
+
+    cluster = new MiniDFSCluster(8020, conf, 1, true, true, true, null, null, null, null);
+    cluster.waitActive();
+  }
+
+  @AfterClass
+  public static void stop() throws Exception {
+    if (null != cluster)
+      cluster.shutdown();
+  }
+
+  @Before
+  public void setup() throws Exception {
+    manager = new DefaultFileSystemManager();
+    manager.addProvider("hdfs", new ReadOnlyHdfsFileProvider());
+    manager.init();
+    this.hdfs = cluster.getFileSystem();
+    hdfs.mkdirs(DIR1_PATH);
+
+    cacheDir = File.createTempFile("jarcache", "");
+    cacheDir.delete();
+  }
+
+  private FileObject createFile(Path path, int length) throws Exception {
+    FSDataOutputStream out = hdfs.create(path, true);
+    out.write(new byte[length]);
+    out.close();
+    FileObject fo = manager.resolveFile(HDFS_URI + path.toUri().getPath());
+    fo.refresh();
+    return fo;
+  }
+
+  private CachingHdfsFileReplicator createReplicator(long maxSize) throws Exception {
+    CachingHdfsFileReplicator replicator = new CachingHdfsFileReplicator(cacheDir, maxSize);
+    replicator.init();
+    return replicator;
+  }
+
+  @Test
+  public void testHitAndMiss() throws Exception {
+    FileObject file = createFile(FILE1_PATH, 1000);
+    CachingHdfsFileReplicator replicator = createReplicator(0);
+
+    File copy = replicator.replicateFile(file, Selectors.SELECT_SELF);
+    Assert.assertEquals(1000, copy.length());
+    Assert.assertEquals(1, replicator.getMisses());
+    Assert.assertEquals(copy, replicator.replicateFile(file, Selectors.SELECT_SELF));
+    Assert.assertEquals(1, replicator.getHits());
+    Assert.assertEquals(1000, replicator.getBytesReplicated());
+    replicator.close();
+
+    //A new replicator finds the copy left on disk
+    replicator = createReplicator(0);
+    Assert.assertEquals(copy, replicator.replicateFile(file, Selectors.SELECT_SELF));
+    Assert.assertEquals(1, replicator.getHits());
+    Assert.assertEquals(0, replicator.getMisses());
+
+    //A changed file gets a new copy
+    file = createFile(FILE1_PATH, 2000);
+    File changed = replicator.replicateFile(file, Selectors.SELECT_SELF);
+    Assert.assertFalse(copy.equals(changed));
+    Assert.assertEquals(2000, changed.length());
+    Assert.assertEquals(1, replicator.getMisses());
+    replicator.close();
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    FileObject file1 = createFile(FILE1_PATH, 1000);
+    FileObject file2 = createFile(FILE2_PATH, 1000);
+    CachingHdfsFileReplicator replicator = createReplicator(1500);
+
+    File copy1 = replicator.replicateFile(file1, Selectors.SELECT_SELF);
+    File copy2 = replicator.replicateFile(file2, Selectors.SELECT_SELF);
+    Assert.assertEquals(1, replicator.getEvictions());
+    Assert.assertFalse(copy1.exists());
+    Assert.assertTrue(copy2.exists());
+    Assert.assertEquals(1000, replicator.getSize());
+    replicator.close();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (null != hdfs) {
+      hdfs.delete(DIR1_PATH, true);
+      hdfs.close();
+    }
+    manager.close();
+    File[] files = cacheDir.listFiles();
+    if (null != files)
+      for (File f : files)
+        f.delete();
+    cacheDir.delete();
+  }
+
+}
@@ -0,0 +1,124 @@
+package org.apache.commons.vfs2.provider;
+
+import java.net.URL;
+
+import org.apache.commons.vfs2.CacheStrategy;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.FileUtil;
+import org.apache.commons.vfs2.cache.SoftRefFilesCache;
+import org.apache.commons.vfs2.impl.DefaultFileReplicator;
+import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
+import org.apache.commons.vfs2.impl.VFSClassLoader;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class HdfsJarFileProviderTest {
+  
+  private static final String HDFS_URI = "hdfs://localhost:8020";
+  private static final Path TEST_DIR = new Path(HDFS_URI + "/test-dir");
+
+  private FileSystem hdfs = null;
+  private DefaultFileSystemManager vfs = null;
+  private FileObject jar = null;
+  
+  private static MiniDFSCluster cluster = null;
+  private static Configuration conf = null;
+  @BeforeClass
+  public static void start() throws Exception {
+    Logger.getRootLogger().setLevel(Level.ERROR);
+
+    //Setup HDFS
+    conf = new Configuration();
+    conf.set(FileSystem.FS_DEFAULT_NAME_KEY, HDFS_URI);
+    conf.set("hadoop.security.token.service.use_ip", "true");
+    conf.set("dfs.datanode.data.dir.perm", "775");
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 1024 * 100); //100K blocksize
+    
+    cluster = new MiniDFSCluster(8020, conf, 1, true, true, true, null, null, null, null);
+    cluster.waitActive();
+  }
+  
+  @AfterClass
+  public static void stop() throws Exception {
+    if (null != cluster)
+      cluster.shutdown();
+  }
+  
+  @Before
+  public void setup() throws Exception {
+    this.hdfs = cluster.getFileSystem();
+    this.hdfs.mkdirs(TEST_DIR);
+    
+    //Copy jar file to TEST_DIR
+    URL jarPath = this.getClass().getResource("/HelloWorld.jar");
+    Path src = new Path(jarPath.toURI().toString());
+    Path dst = new Path(TEST_DIR, src.getName());
+    this.hdfs.copyFromLocalFile(src, dst);
+    
+    //Set up the VFS, jars are read from HDFS in place
+    vfs = new DefaultFileSystemManager();
+    vfs.addProvider("jar", new HdfsJarFileProvider());
+    vfs.addProvider("hdfs", new ReadOnlyHdfsFileProvider());
+    vfs.addExtensionMap("jar", "jar");
+    vfs.setFilesCache(new SoftRefFilesCache());
+    vfs.setReplicator(new DefaultFileReplicator());
+    vfs.setCacheStrategy(CacheStrategy.ON_RESOLVE);
+    vfs.init();
+    
+    jar = vfs.resolveFile(new Path(TEST_DIR, "HelloWorld.jar").toUri().toString());
+  }
+  
+  @Test
+  public void testReadInPlace() throws Exception {
+    FileObject root = vfs.createFileSystem(jar);
+    Assert.assertTrue(root.getFileSystem() instanceof HdfsJarFileSystem);
+    Assert.assertEquals(FileType.FOLDER, root.getType());
+    Assert.assertEquals(2, root.getChildren().length);
+    
+    FileObject clazz = root.resolveFile("test/HelloWorld.class");
+    Assert.assertEquals(FileType.FILE, clazz.getType());
+    Assert.assertEquals(292, clazz.getContent().getSize());
+    byte[] bytes = FileUtil.getContent(clazz);
+    Assert.assertEquals(292, bytes.length);
+    Assert.assertEquals((byte) 0xca, bytes[0]);
+    Assert.assertEquals((byte) 0xfe, bytes[1]);
+    
+    Assert.assertFalse(root.resolveFile("test/Missing.class").exists());
+    Assert.assertNotNull(clazz.getParent().getContent().getAttribute("Manifest-Version"));
+  }
+
+  @Test
+  public void testLoadClass() throws Exception {
+    VFSClassLoader cl = new VFSClassLoader(jar, vfs);
+    Class<?> helloWorldClass = cl.loadClass("test.HelloWorld");
+    Object o = helloWorldClass.newInstance();
+    Assert.assertEquals("Hello World!", o.toString());
+  }
+
+  @Test(expected = FileSystemException.class)
+  public void testReadFolder() throws Exception {
+    FileObject root = vfs.createFileSystem(jar);
+    root.resolveFile("test").getContent().getInputStream();
+  }
+  
+  @After
+  public void tearDown() throws Exception {
+    this.hdfs.delete(TEST_DIR, true);
+    this.hdfs.close();
+    this.vfs.close();
+  }
+  
+}
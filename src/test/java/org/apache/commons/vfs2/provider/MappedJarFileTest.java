@@ -0,0 +1,120 @@
+package org.apache.commons.vfs2.provider;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MappedJarFileTest {
+
+  private static byte[] read(ZipFile zip, String name) throws Exception {
+    ZipEntry entry = zip.getEntry(name);
+    byte[] bytes = new byte[(int) entry.getSize()];
+    InputStream in = zip.getInputStream(entry);
+    int n = 0;
+    while (n < bytes.length)
+      n += in.read(bytes, n, bytes.length - n);
+    in.close();
+    return bytes;
+  }
+
+  private static byte[] toArray(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return bytes;
+  }
+
+  @Test
+  public void testDeflatedEntries() throws Exception {
+    File file = new File(MappedJarFileTest.class.getResource("/HelloWorld.jar").toURI());
+    MappedJarFile jar = new MappedJarFile(file);
+    ZipFile zip = new ZipFile(file);
+    Assert.assertEquals(3, jar.size());
+    Assert.assertTrue(jar.contains("test/HelloWorld.class"));
+    Assert.assertFalse(jar.contains("test/"));
+    Assert.assertArrayEquals(read(zip, "test/HelloWorld.class"), toArray(jar.getEntry("test/HelloWorld.class")));
+    Assert.assertArrayEquals(read(zip, "META-INF/MANIFEST.MF"), toArray(jar.getEntry("META-INF/MANIFEST.MF")));
+    Assert.assertNull(jar.getEntry("test/Missing.class"));
+    zip.close();
+  }
+
+  private static byte[] readJar() throws Exception {
+    File file = new File(MappedJarFileTest.class.getResource("/HelloWorld.jar").toURI());
+    byte[] bytes = new byte[(int) file.length()];
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    raf.readFully(bytes);
+    raf.close();
+    return bytes;
+  }
+
+  private static void assertCorrupt(byte[] bytes) throws Exception {
+    File file = File.createTempFile("corrupt", ".jar");
+    try {
+      FileOutputStream out = new FileOutputStream(file);
+      out.write(bytes);
+      out.close();
+      new MappedJarFile(file);
+      Assert.fail("Expected ZipException");
+    } catch (ZipException e) {
+      // expected
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testTruncatedJar() throws Exception {
+    byte[] bytes = readJar();
+
+    // Cut off before the end of the central directory
+    byte[] truncated = new byte[bytes.length - ZipDirectory.END_SIZE - 10];
+    System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+    assertCorrupt(truncated);
+
+    // The name of the first central directory entry runs past the end of the directory
+    ByteBuffer buf = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    int pos = 0;
+    while (buf.getInt(pos) != 0x02014b50)
+      pos++;
+    buf.putShort(pos + 28, (short) 0xffff);
+    assertCorrupt(bytes);
+  }
+
+  @Test
+  public void testStoredEntries() throws Exception {
+    byte[] content = "stored entry".getBytes("UTF-8");
+    CRC32 crc = new CRC32();
+    crc.update(content);
+    File file = File.createTempFile("stored", ".jar");
+    try {
+      ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+      out.setComment("a comment after the central directory");
+      ZipEntry entry = new ZipEntry("a/b.txt");
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize(content.length);
+      entry.setCrc(crc.getValue());
+      out.putNextEntry(entry);
+      out.write(content);
+      out.closeEntry();
+      out.close();
+
+      MappedJarFile jar = new MappedJarFile(file);
+      ByteBuffer bytes = jar.getEntry("a/b.txt");
+      Assert.assertTrue(bytes.isReadOnly());
+      Assert.assertArrayEquals(content, toArray(bytes));
+    } finally {
+      file.delete();
+    }
+  }
+
+}
@@ -1,14 +1,18 @@
 package org.apache.commons.vfs2.provider;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.util.Map;
 
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileSystemOptions;
 import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.RandomAccessContent;
 import org.apache.commons.vfs2.impl.DefaultFileSystemManager;
 import org.apache.commons.vfs2.util.RandomAccessMode;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
@@ -129,6 +133,23 @@ public class ReadOnlyHdfsFileProviderTest {
     
   }
   
+  @Test
+  public void testListedChildrenUseListingStatus() throws Exception {
+    //Create the test file
+    FileObject file = createTestFile(hdfs);
+    FileObject dir = file.getParent();
+    
+    FileObject[] children = dir.getChildren();
+    Assert.assertEquals(1, children.length);
+    
+    //The status from the listing is used until the child is refreshed
+    hdfs.delete(FILE1_PATH, false);
+    Assert.assertTrue(children[0].exists());
+    Assert.assertEquals(FileType.FILE, children[0].getType());
+    children[0].refresh();
+    Assert.assertFalse(children[0].exists());
+  }
+  
   @Test
   public void testGetContentSize() throws Exception {
     FileObject fo = manager.resolveFile(TEST_DIR1);
@@ -235,6 +256,69 @@ public class ReadOnlyHdfsFileProviderTest {
     file.getContent().getRandomAccessContent(RandomAccessMode.READ).close();
   }
 
+  @Test
+  public void testRandomAccessContentReads() throws Exception {
+    //Create a file holding 0, 1, 2, ... 
+    hdfs.mkdirs(DIR1_PATH);
+    FSDataOutputStream out = hdfs.create(FILE1_PATH);
+    for (int i = 0; i < 1000; i++)
+      out.writeInt(i);
+    out.close();
+    FileObject file = manager.resolveFile(TEST_FILE1);
+    
+    RandomAccessContent rac = file.getContent().getRandomAccessContent(RandomAccessMode.READ);
+    Assert.assertEquals(4000, rac.length());
+    Assert.assertEquals(0, rac.readInt());
+    rac.seek(400);
+    Assert.assertEquals(100, rac.readInt());
+    Assert.assertEquals(4, rac.skipBytes(4));
+    Assert.assertEquals(102, rac.readInt());
+    byte[] b = new byte[8];
+    rac.readFully(b);
+    Assert.assertEquals(103, b[3]);
+    Assert.assertEquals(104, b[7]);
+    Assert.assertEquals(420, rac.getFilePointer());
+    
+    //Positional reads leave the file pointer alone
+    ((HdfsReadOnlyRandomAccessContent) rac).readFully(3996, b, 0, 4);
+    Assert.assertEquals(999 - 768, b[3] & 0xff);
+    Assert.assertEquals(420, rac.getFilePointer());
+    
+    rac.seek(3998);
+    Assert.assertEquals(2, rac.skipBytes(10));
+    try {
+      rac.readInt();
+      Assert.fail("read past the end of the file");
+    } catch (EOFException e) {
+      // expected
+    }
+    rac.close();
+  }
+
+  @Test
+  public void testReadAheadWindows() throws Exception {
+    hdfs.mkdirs(DIR1_PATH);
+    FSDataOutputStream out = hdfs.create(FILE1_PATH);
+    for (int i = 0; i < 1000; i++)
+      out.writeInt(i);
+    out.close();
+    
+    //Windows of 10 bytes make most ints span two windows
+    FileSystemOptions opts = new FileSystemOptions();
+    HdfsFileSystemConfigBuilder.getInstance().setReadAheadSize(opts, 10);
+    HdfsFileSystemConfigBuilder.getInstance().setReadAheadWindows(opts, 2);
+    FileObject file = manager.resolveFile(TEST_FILE1, opts);
+    
+    RandomAccessContent rac = file.getContent().getRandomAccessContent(RandomAccessMode.READ);
+    for (int i = 0; i < 1000; i++)
+      Assert.assertEquals(i, rac.readInt());
+    rac.seek(2000);
+    Assert.assertEquals(500, rac.readInt());
+    rac.seek(8);
+    Assert.assertEquals(2, rac.readInt());
+    rac.close();
+  }
+
   @Test
   public void testEquals() throws Exception {
     FileObject fo = manager.resolveFile(TEST_DIR1);
@@ -248,6 +332,74 @@ public class ReadOnlyHdfsFileProviderTest {
     Assert.assertEquals(file, file2);
   }
   
+  @Test
+  public void testStatusCache() throws Exception {
+    FileSystemOptions opts = new FileSystemOptions();
+    HdfsFileSystemConfigBuilder.getInstance().setStatusCacheTtl(opts, 60000);
+    
+    //Create the test file
+    createTestFile(hdfs);
+    FileObject file = manager.resolveFile(TEST_FILE1, opts);
+    Assert.assertTrue(file.exists());
+    
+    //The cached status is used until it is invalidated, refreshing the file object does not drop it
+    hdfs.delete(FILE1_PATH, false);
+    Assert.assertTrue(file.exists());
+    file.refresh();
+    Assert.assertTrue(file.exists());
+    Assert.assertTrue(manager.resolveFile(TEST_FILE1, opts).exists());
+    ((ReadOnlyHdfsFileSystem) file.getFileSystem()).invalidateFileStatus(file.getName());
+    Assert.assertFalse(file.exists());
+  }
+  
+  @Test
+  public void testStatusCacheBounds() throws Exception {
+    FileSystemOptions opts = new FileSystemOptions();
+    HdfsFileSystemConfigBuilder.getInstance().setStatusCacheTtl(opts, 200);
+    HdfsFileSystemConfigBuilder.getInstance().setStatusCacheSize(opts, 2);
+    createTestFile(hdfs);
+    FileObject file = manager.resolveFile(TEST_FILE1, opts);
+    ReadOnlyHdfsFileSystem fs = (ReadOnlyHdfsFileSystem) file.getFileSystem();
+    
+    //Probes for missing paths do not grow the cache past its size
+    for (int i = 0; i < 5; i++)
+      Assert.assertFalse(manager.resolveFile(TEST_DIR1 + "/missing-" + i, opts).exists());
+    Assert.assertEquals(2, fs.getStatusCacheSize());
+    
+    //An expired status is dropped and read again
+    Assert.assertTrue(file.exists());
+    hdfs.delete(FILE1_PATH, false);
+    Thread.sleep(400);
+    file.refresh();
+    Assert.assertFalse(file.exists());
+  }
+  
+  @Test
+  public void testSharedClient() throws Exception {
+    int clients = HdfsClientRegistry.size();
+    FileObject file = createTestFile(hdfs);
+    Assert.assertEquals(clients + 1, HdfsClientRegistry.size());
+    
+    //A second manager uses the same client
+    DefaultFileSystemManager other = new DefaultFileSystemManager();
+    other.addProvider("hdfs", new ReadOnlyHdfsFileProvider());
+    other.init();
+    Assert.assertTrue(other.resolveFile(TEST_FILE1).exists());
+    Assert.assertEquals(clients + 1, HdfsClientRegistry.size());
+    other.close();
+    Assert.assertTrue(file.exists());
+    Assert.assertEquals(clients + 1, HdfsClientRegistry.size());
+    
+    //Different client settings get their own client
+    FileSystemOptions opts = new FileSystemOptions();
+    HdfsFileSystemConfigBuilder.getInstance().setSocketTimeout(opts, 30000);
+    Assert.assertTrue(manager.resolveFile(TEST_FILE1, opts).exists());
+    Assert.assertEquals(clients + 2, HdfsClientRegistry.size());
+    
+    manager.close();
+    Assert.assertEquals(clients, HdfsClientRegistry.size());
+  }
+  
   @After
   public void tearDown() throws Exception {
     if (null != hdfs) {